@@ -124,6 +124,14 @@ public class RASEDRLCompiler {
 			}
 			
 			CompilerUtils.outputDRLFile(ruleSet);
+			// optionally write the data the rules need so that it can be prefetched
+			if (args.length > 2) {
+				try {
+					CompilerUtils.outputPrefetchManifest(ruleSet,args[2]);
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
 			System.exit(0);	
 	}	
 	
@@ -25,6 +25,10 @@ import java.util.Set;
 import org.dcom.core.services.ComplianceDocumentService;
 import org.dcom.core.DCOM;
 import java.net.URL;
+import java.util.HashMap;
+import java.io.PrintWriter;
+import java.io.FileWriter;
+import java.io.IOException;
 
 /**
 * The class holds various utility methods common to multiple compilers.
@@ -53,6 +57,20 @@ public class CompilerUtils {
 			}
 		}
 
+		// writes the entity type, property, comparator, target, unit and rule of every request the rules can make, tab separated, so the rule engine can prefetch them
+		public static void outputPrefetchManifest(Set<DRLBuilder> ruleSet,String fileName) throws IOException {
+			HashMap<String,String> ruleTypes=new HashMap<String,String>();
+			for (DRLBuilder rule : ruleSet) {
+				if (rule.getEntityType()!=null) ruleTypes.put(rule.getRuleId(),rule.getEntityType());
+			}
+			try (PrintWriter out=new PrintWriter(new FileWriter(fileName))) {
+				for (DRLBuilder rule : ruleSet) {
+					String type=rule.getEntityType()!=null?rule.getEntityType():ruleTypes.getOrDefault(rule.getRuleId(),"*");
+					for (String[] fetch: rule.getFetches()) out.println(type+"\t"+String.join("\t",fetch));
+				}
+			}
+		}
+
 		private static String generateDRLFileHeader() {
 			StringBuffer str= new StringBuffer();
 			str.append("import org.dcom.ruleengine.core.RuleEngineComplianceObject;\n");
@@ -19,6 +19,8 @@ along with this program.  If not, see <https://www.gnu.org/licenses/>.
 package org.dcom.ruleengine.core;
 
 import org.dcom.core.compliancedocument.ComplianceDocument;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
 * The class contains the functionality needed to build DRL rules.
@@ -27,9 +29,25 @@ public class DRLBuilder {
 		
 		private StringBuffer rule;
 		private String currentRule;
+		private String entityType;
+		private List<String[]> fetches;
 	
 		public DRLBuilder(){
 				rule=new StringBuffer();
+				fetches=new ArrayList<String[]>();
+		}
+		
+		public String getRuleId() {
+			return currentRule;
+		}
+		
+		public String getEntityType() {
+			return entityType;
+		}
+		
+		// the property, comparator, target, unit and rule of every data source request this rule can make
+		public List<String[]> getFetches() {
+			return fetches;
 		}
 		
 		public DRLBuilder newRuleSummary(String docRef,String id,String appender) {
@@ -101,6 +119,7 @@ public class DRLBuilder {
 		}
 		
 		private void fetchingGeneration(String prop, String operator,String value,String unit) {
+			fetches.add(new String[]{CompilerUtils.sanitiseName(prop),operator,value,unit,currentRule});
 			rule.append("\"").append(CompilerUtils.sanitiseName(prop)).append("\",\"").append(operator).append("\",\"").append(value).append("\",\"").append(unit).append("\",\"").append(currentRule).append("\"");
 		}
 		
@@ -133,6 +152,7 @@ public class DRLBuilder {
 		}
 		
 		public DRLBuilder checkType(String type){
+			entityType=type;
 			return checkTemplate("type",type,false);
 		}
 		
@@ -85,8 +85,6 @@ public class RuleEngine {
       LOGGER.info("Starting Compliance Check");
       try {
         check.initalise();
-        LOGGER.info("Starting Engine");
-        complianceChecks.get(guid).startEngines();
       } catch (Exception e) {
         e.printStackTrace();
       }
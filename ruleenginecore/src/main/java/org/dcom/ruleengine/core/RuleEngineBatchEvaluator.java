@@ -0,0 +1,93 @@
+/*
+Copyright (C) 2022 Cardiff University
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+*/
+package org.dcom.ruleengine.core;
+
+import org.kie.api.runtime.StatelessKieSession;
+import org.kie.api.runtime.ExecutionResults;
+import org.kie.api.KieServices;
+import org.kie.api.command.Command;
+import org.kie.api.command.KieCommands;
+import org.drools.core.command.runtime.rule.AgendaGroupSetFocusCommand;
+import org.dcom.core.services.DictionaryService;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+* This class evaluates compiled rule packages against entities whose property values are already known, for example for portfolio screening. Each evaluation runs in its own stateless session without any data source, properties that are not known are recorded as required data and treated as not satisfied.
+* Raw values are always compared in the rule engine. When a dictionary is given its items supply the data type and unit of each property, so targets are converted into the unit the values are expressed in.
+*
+*/
+public class RuleEngineBatchEvaluator {
+
+	private static final String RESULTS="results";
+
+	private static ExecutorService executor;
+
+	private static synchronized ExecutorService getExecutor() {
+		if (executor==null) executor=Executors.newFixedThreadPool(RuleEngineConfiguration.getInt(RuleEngineConfiguration.BATCH_THREADS,Runtime.getRuntime().availableProcessors()));
+		return executor;
+	}
+
+	public static Collection<RuleEngineResult> evaluate(String ruleName,Collection<RuleEngineComplianceObject> entities) {
+		return evaluate(ruleName,entities,null);
+	}
+
+	public static Collection<RuleEngineResult> evaluate(String ruleName,Collection<RuleEngineComplianceObject> entities,DictionaryService dictionary) {
+		for (RuleEngineComplianceObject entity: entities) {
+			entity.setOffline(true);
+			if (dictionary!=null) entity.setDictionary(dictionary);
+		}
+		StatelessKieSession session=RuleEngineKieRegistry.getKieBase(ruleName).newStatelessKieSession();
+		KieCommands commandFactory=KieServices.Factory.get().getCommands();
+		List<Command<?>> commands=new ArrayList<Command<?>>();
+		commands.add(commandFactory.newInsertElements(entities));
+		for (String group: RuleEngineExecutor.AGENDA_GROUPS) {
+			commands.add(new AgendaGroupSetFocusCommand(group));
+			commands.add(commandFactory.newFireAllRules());
+		}
+		commands.add(commandFactory.newGetObjects(new ResultObjectFilter(),RESULTS));
+		ExecutionResults results=session.execute(commandFactory.newBatchExecution(commands));
+		List<RuleEngineResult> ruleResults=new ArrayList<RuleEngineResult>();
+		for (Object result: (Collection<?>)results.getValue(RESULTS)) {
+			if (result instanceof RuleEngineResult) ruleResults.add((RuleEngineResult)result);
+		}
+		return ruleResults;
+	}
+
+	public static CompletableFuture<Collection<RuleEngineResult>> submit(String ruleName,Collection<RuleEngineComplianceObject> entities) {
+		return submit(ruleName,entities,null);
+	}
+
+	public static CompletableFuture<Collection<RuleEngineResult>> submit(String ruleName,Collection<RuleEngineComplianceObject> entities,DictionaryService dictionary) {
+		return CompletableFuture.supplyAsync(() -> evaluate(ruleName,entities,dictionary),getExecutor());
+	}
+
+	public static List<CompletableFuture<Collection<RuleEngineResult>>> evaluateAll(String ruleName,List<Collection<RuleEngineComplianceObject>> entitySets) {
+		return evaluateAll(ruleName,entitySets,null);
+	}
+
+	public static List<CompletableFuture<Collection<RuleEngineResult>>> evaluateAll(String ruleName,List<Collection<RuleEngineComplianceObject>> entitySets,DictionaryService dictionary) {
+		List<CompletableFuture<Collection<RuleEngineResult>>> results=new ArrayList<CompletableFuture<Collection<RuleEngineResult>>>();
+		for (Collection<RuleEngineComplianceObject> entities: entitySets) results.add(submit(ruleName,entities,dictionary));
+		return results;
+	}
+}
@@ -0,0 +1,32 @@
+/*
+Copyright (C) 2022 Cardiff University
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+*/
+package org.dcom.ruleengine.core;
+
+import org.dcom.core.services.ComplianceCheckAnswer;
+import java.util.List;
+import java.util.concurrent.Future;
+
+/**
+* This interface can be implemented by data sources that are able to answer many property requests (across entities) in one call. The answers must be returned in the same order as the requests.
+*
+*/
+public interface RuleEngineBulkDataSource {
+
+	public Future<List<ComplianceCheckAnswer>> getAnswers(List<RuleEngineDataRequest> requests);
+
+}
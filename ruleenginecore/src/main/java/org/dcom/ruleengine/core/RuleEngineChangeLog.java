@@ -0,0 +1,163 @@
+/*
+Copyright (C) 2022 Cardiff University
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+*/
+package org.dcom.ruleengine.core;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+
+/**
+* This class numbers the changes made to the results of a compliance check (clause results and the status of entities against clauses) and keeps the last DCOM_RULEENGINE_CHANGE_BUFFER of each kind, so that clients can ask for just the changes since the sequence token they last saw.
+* Entity changes are kept apart from clause results, a reset of a large check changes the status of every entity and would otherwise push all the clause results out.
+* The token carries an epoch unique to this log, a token from before a restart therefore never matches and the client is told to fetch everything again.
+*
+*/
+public class RuleEngineChangeLog {
+
+	private static final int CAPACITY=Math.max(1,RuleEngineConfiguration.getInt(RuleEngineConfiguration.CHANGE_BUFFER,10000));
+
+	public static final String RESULT="result";
+	public static final String ENTITY="entity";
+
+	private final String epoch;
+	private final ArrayDeque<Change> results=new ArrayDeque<Change>();
+	private final ArrayDeque<Change> entities=new ArrayDeque<Change>();
+	private long sequence;
+	private long droppedResult;
+	private long droppedEntity;
+
+	public RuleEngineChangeLog() {
+		epoch=UUID.randomUUID().toString().substring(0,8);
+	}
+
+	public synchronized long record(String type,String id,String clause,String value) {
+		sequence++;
+		Change change=new Change(sequence,type,id,clause,value);
+		if (type.equals(ENTITY)) droppedEntity=add(entities,change,droppedEntity);
+		else droppedResult=add(results,change,droppedResult);
+		return sequence;
+	}
+
+	// returns the sequence of the latest change no longer held
+	private static long add(ArrayDeque<Change> ring,Change change,long dropped) {
+		ring.addLast(change);
+		if (ring.size() > CAPACITY) return ring.removeFirst().getSequence();
+		return dropped;
+	}
+
+	public synchronized String getToken() {
+		return epoch+"-"+sequence;
+	}
+
+	// the changes after the token, each kind is null when those changes are no longer held (or the token is from another log) and has to be fetched again
+	public synchronized Changes since(String token) {
+		long since=-1;
+		if (token!=null && token.startsWith(epoch+"-")) {
+			try {
+				since=Long.parseLong(token.substring(epoch.length()+1));
+			} catch (NumberFormatException e) {
+				since=-1;
+			}
+		}
+		if (since < 0 || since > sequence) return new Changes(getToken(),null,null);
+		return new Changes(getToken(),changesAfter(results,since,droppedResult),changesAfter(entities,since,droppedEntity));
+	}
+
+	private static List<Change> changesAfter(ArrayDeque<Change> ring,long since,long dropped) {
+		if (since < dropped) return null;
+		List<Change> changes=new ArrayList<Change>();
+		Iterator<Change> newestFirst=ring.descendingIterator();
+		while (newestFirst.hasNext()) {
+			Change change=newestFirst.next();
+			if (change.getSequence() <= since) break;
+			changes.add(change);
+		}
+		Collections.reverse(changes);
+		return changes;
+	}
+
+	public static class Changes {
+
+		private final String token;
+		private final List<Change> results;
+		private final List<Change> entities;
+
+		Changes(String _token,List<Change> _results,List<Change> _entities) {
+			token=_token;
+			results=_results;
+			entities=_entities;
+		}
+
+		// the token to pass next time
+		public String getToken() {
+			return token;
+		}
+
+		// the clause result changes in order, null when all results have to be fetched again
+		public List<Change> getResults() {
+			return results;
+		}
+
+		// the entity status changes in order, null when they have to be fetched again
+		public List<Change> getEntities() {
+			return entities;
+		}
+	}
+
+	public static class Change {
+
+		private final long sequence;
+		private final String type;
+		private final String id;
+		private final String clause;
+		private final String value;
+
+		Change(long _sequence,String _type,String _id,String _clause,String _value) {
+			sequence=_sequence;
+			type=_type;
+			id=_id;
+			clause=_clause;
+			value=_value;
+		}
+
+		public long getSequence() {
+			return sequence;
+		}
+
+		public String getType() {
+			return type;
+		}
+
+		// the clause for result changes, the entity for entity changes
+		public String getId() {
+			return id;
+		}
+
+		// the clause of an entity change, null when all of the entity's statuses were cleared
+		public String getClause() {
+			return clause;
+		}
+
+		public String getValue() {
+			return value;
+		}
+	}
+}
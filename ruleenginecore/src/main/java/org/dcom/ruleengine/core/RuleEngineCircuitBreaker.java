@@ -0,0 +1,88 @@
+/*
+Copyright (C) 2022 Cardiff University
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+*/
+package org.dcom.ruleengine.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+* This class stops calls to a data source that keeps failing. After DCOM_RULEENGINE_BREAKER_FAILURES consecutive failed or timed out calls the circuit opens and calls fail immediately, after DCOM_RULEENGINE_BREAKER_RESET milliseconds a single trial call is let through which closes the circuit again if it succeeds.
+*
+*/
+public class RuleEngineCircuitBreaker {
+
+	private static final int FAILURE_THRESHOLD=Math.max(1,RuleEngineConfiguration.getInt(RuleEngineConfiguration.BREAKER_FAILURES,5));
+	private static final long RESET_TIME=RuleEngineConfiguration.getInt(RuleEngineConfiguration.BREAKER_RESET,30000);
+
+	private static final Logger LOGGER = LoggerFactory.getLogger( RuleEngineCircuitBreaker.class );
+
+	private final String key;
+	private int consecutiveFailures;
+	private long openedAt;
+	private boolean trial;
+	private long opened;
+	private long rejected;
+
+	public RuleEngineCircuitBreaker(String _key) {
+		key=_key;
+		openedAt=-1;
+	}
+
+	public synchronized boolean allowRequest() {
+		if (openedAt < 0) return true;
+		if (!trial && System.currentTimeMillis()-openedAt >= RESET_TIME) {
+			trial=true;
+			return true;
+		}
+		rejected++;
+		return false;
+	}
+
+	public synchronized void recordSuccess() {
+		consecutiveFailures=0;
+		if (openedAt >= 0) LOGGER.info("Closed circuit for "+key);
+		openedAt=-1;
+		trial=false;
+	}
+
+	public synchronized void recordFailure() {
+		consecutiveFailures++;
+		if (trial || (openedAt < 0 && consecutiveFailures >= FAILURE_THRESHOLD)) {
+			if (!trial) opened++;
+			openedAt=System.currentTimeMillis();
+			trial=false;
+			LOGGER.error("Opened circuit for "+key+" after "+consecutiveFailures+" failed calls");
+		}
+	}
+
+	public synchronized String getState() {
+		if (openedAt < 0) return "closed";
+		if (trial) return "half-open";
+		return "open";
+	}
+
+	public synchronized String toJSON() {
+		StringBuffer str=new StringBuffer();
+		str.append("{\"state\":\"").append(getState()).append("\"");
+		str.append(",\"consecutiveFailures\":").append(consecutiveFailures);
+		str.append(",\"opened\":").append(opened);
+		str.append(",\"rejected\":").append(rejected);
+		str.append("}");
+		return str.toString();
+	}
+}
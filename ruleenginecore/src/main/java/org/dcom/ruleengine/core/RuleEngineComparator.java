@@ -0,0 +1,180 @@
+/*
+Copyright (C) 2022 Cardiff University
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+*/
+package org.dcom.ruleengine.core;
+
+import org.dcom.core.services.DictionaryItem;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+* This class evaluates RASE comparisons (==, !=, >, >=, <, <=, includes, excludes) against a raw property value fetched from a data source, so that the same property checked against several targets only has to be fetched once.
+* Values are interpreted using the data type of the dictionary item and the target is converted into the dictionary unit before numbers are compared. A comparison that cannot be made locally, including one against a data type that is not recognised, returns null and is left to the data source.
+*
+*/
+public class RuleEngineComparator {
+
+	private static final HashMap<String,String> dimensions=new HashMap<String,String>();
+	private static final HashMap<String,Double> factors=new HashMap<String,Double>();
+	private static final HashMap<String,String> dataTypes=new HashMap<String,String>();
+
+	static {
+		dataType("number","number","numeric","integer","int","long","short","double","float","real","decimal");
+		dataType("boolean","boolean","bool","logical");
+		dataType("string","string","text","str","char","varchar","enum","enumeration");
+		unit("length",0.001,"mm","millimetre","millimetres","millimeter","millimeters");
+		unit("length",0.01,"cm","centimetre","centimetres");
+		unit("length",1.0,"m","metre","metres","meter","meters");
+		unit("length",1000.0,"km","kilometre","kilometres");
+		unit("length",0.0254,"in","inch","inches");
+		unit("length",0.3048,"ft","foot","feet");
+		unit("area",0.000001,"mm2","mm²","mm^2");
+		unit("area",0.0001,"cm2","cm²","cm^2");
+		unit("area",1.0,"m2","m²","m^2","sqm");
+		unit("volume",0.000000001,"mm3","mm³","mm^3");
+		unit("volume",0.001,"l","litre","litres","liter","liters");
+		unit("volume",1.0,"m3","m³","m^3");
+		unit("mass",0.001,"g","gram","grams");
+		unit("mass",1.0,"kg","kilogram","kilograms");
+		unit("mass",1000.0,"t","tonne","tonnes");
+		unit("time",1.0,"s","second","seconds");
+		unit("time",60.0,"min","minute","minutes");
+		unit("time",3600.0,"h","hour","hours");
+		unit("angle",1.0,"°","deg","degree","degrees");
+		unit("ratio",0.01,"%","percent");
+	}
+
+	private static void unit(String dimension,double factor,String... names) {
+		for (String name: names) {
+			dimensions.put(name,dimension);
+			factors.put(name,factor);
+		}
+	}
+
+	private static void dataType(String dataType,String... names) {
+		for (String name: names) dataTypes.put(name,dataType);
+	}
+
+	// the data type of a dictionary item as number, boolean or string, null when it is not recognised
+	public static String normaliseDataType(String dataType) {
+		if (dataType==null) return null;
+		return dataTypes.get(dataType.trim().toLowerCase());
+	}
+
+	public static Boolean compare(List<String> values,String comparator,String target,String unit,DictionaryItem item) {
+		if (values==null || values.size()==0 || comparator==null) return null;
+		String dataType=item==null?null:item.getDataType();
+		if (dataType==null || dataType.trim().equals("")) dataType=toNumber(values.get(0))!=null && toNumber(target)!=null?"number":"string";
+		else {
+			dataType=normaliseDataType(dataType);
+			if (dataType==null) return null;
+		}
+		switch (comparator) {
+			case "includes":
+				return includes(values,target,dataType,unit,item);
+			case "excludes":
+				Boolean included=includes(values,target,dataType,unit,item);
+				return included==null?null:!included;
+			case "==":
+				return equal(values.get(0),target,dataType,unit,item);
+			case "!=":
+				Boolean equal=equal(values.get(0),target,dataType,unit,item);
+				return equal==null?null:!equal;
+			case ">":
+			case ">=":
+			case "<":
+			case "<=":
+				if (!dataType.equals("number")) return null;
+				Double value=toNumber(values.get(0));
+				Double targetValue=convert(toNumber(target),unit,item);
+				if (value==null || targetValue==null) return null;
+				int result=compareNumbers(value,targetValue);
+				if (comparator.equals(">")) return result > 0;
+				if (comparator.equals(">=")) return result >= 0;
+				if (comparator.equals("<")) return result < 0;
+				return result <= 0;
+			default:
+				return null;
+		}
+	}
+
+	private static Boolean includes(List<String> values,String target,String dataType,String unit,DictionaryItem item) {
+		List<String> allValues=new ArrayList<String>();
+		for (String v: values) {
+			for (String part: v.split("[,;]")) allValues.add(part.trim());
+		}
+		for (String v: allValues) {
+			Boolean equal=equal(v,target,dataType,unit,item);
+			if (equal==null) return null;
+			if (equal) return true;
+		}
+		return false;
+	}
+
+	private static Boolean equal(String value,String target,String dataType,String unit,DictionaryItem item) {
+		if (value==null || target==null) return null;
+		if (dataType.equals("number")) {
+			Double numberValue=toNumber(value);
+			Double targetValue=convert(toNumber(target),unit,item);
+			if (numberValue==null || targetValue==null) return null;
+			return compareNumbers(numberValue,targetValue)==0;
+		}
+		if (dataType.equals("boolean")) {
+			Boolean booleanValue=toBoolean(value);
+			Boolean targetValue=toBoolean(target);
+			if (booleanValue==null || targetValue==null) return null;
+			return booleanValue.equals(targetValue);
+		}
+		return value.trim().equalsIgnoreCase(target.trim());
+	}
+
+	// converts a target from the unit used in the document into the unit of the dictionary item, which the raw value is expressed in
+	private static Double convert(Double target,String unit,DictionaryItem item) {
+		if (target==null) return null;
+		if (unit==null || unit.trim().equals("") || item==null || item.getUnit()==null || item.getUnit().size()==0) return target;
+		String from=unit.trim();
+		String to=item.getUnit().get(0).trim();
+		if (from.equalsIgnoreCase(to)) return target;
+		String fromKey=factors.containsKey(from)?from:from.toLowerCase();
+		String toKey=factors.containsKey(to)?to:to.toLowerCase();
+		if (!factors.containsKey(fromKey) || !factors.containsKey(toKey) || !dimensions.get(fromKey).equals(dimensions.get(toKey))) return null;
+		return target*factors.get(fromKey)/factors.get(toKey);
+	}
+
+	// unit conversion is not exact so values within rounding error are treated as equal
+	private static int compareNumbers(double value,double target) {
+		if (Math.abs(value-target) <= 1e-9*Math.max(1.0,Math.max(Math.abs(value),Math.abs(target)))) return 0;
+		return Double.compare(value,target);
+	}
+
+	private static Double toNumber(String value) {
+		if (value==null) return null;
+		try {
+			return Double.parseDouble(value.trim());
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	private static Boolean toBoolean(String value) {
+		String v=value.trim().toLowerCase();
+		if (v.equals("true") || v.equals("yes") || v.equals("1")) return true;
+		if (v.equals("false") || v.equals("no") || v.equals("0")) return false;
+		return null;
+	}
+}
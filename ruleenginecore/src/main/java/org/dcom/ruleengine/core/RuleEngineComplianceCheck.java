@@ -23,6 +23,8 @@ import java.util.List;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.TreeSet;
+import java.util.NavigableSet;
 import java.util.Arrays;
 import org.dcom.core.services.DictionaryService;
 import java.io.IOException;
@@ -49,8 +51,18 @@ import java.util.Collection;
 import java.util.Queue;
 import java.util.AbstractMap.SimpleEntry;
 import java.util.concurrent.Future;
+import java.util.concurrent.CompletableFuture;
 import java.util.LinkedList;
+import java.util.LinkedHashSet;
+import java.util.LinkedHashMap;
+import java.util.ArrayDeque;
+import java.util.Collections;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 /**
@@ -58,7 +70,7 @@ import java.util.concurrent.ExecutionException;
 *
 */
 
-public class RuleEngineComplianceCheck  {
+public class RuleEngineComplianceCheck implements RuleEngineEntityListener {
 	
 		private ComplianceCheckSettings settings;
 		private LocalDateTime lastAccessed;
@@ -80,6 +92,15 @@ public class RuleEngineComplianceCheck  {
 		private transient ServiceCertificate certificate;
 		private transient DataSourceService dataSource;
 		private transient Set<DataSourceService> dataSourceCache;
+		private transient RuleEngineDataSourceRouter router;
+		private transient ConcurrentHashMap<String,Set<String>> clauseEntities;
+		private transient ConcurrentHashMap<String,ClauseAggregate> clauseAggregates;
+		private transient Set<String> dirtyClauses;
+		private transient RuleEngineResultIndex resultIndex;
+		private transient RuleEngineChangeLog changes;
+		
+		private static final int DISCOVERY_THREADS=RuleEngineConfiguration.getInt(RuleEngineConfiguration.DISCOVERY_THREADS,16);
+		private static final boolean COMPOSITE=RuleEngineConfiguration.getBoolean(RuleEngineConfiguration.COMPOSITE,false);
 		
 		private static final Logger LOGGER = LoggerFactory.getLogger( RuleEngineComplianceCheck.class );
 
@@ -95,7 +116,12 @@ public class RuleEngineComplianceCheck  {
 			overrideData=new HashMap<String,ComplianceCheckResultSubmission>();
 			identityData=new HashMap<String,String>();
 			timeData=new HashMap<String,LocalDateTime>();
-		
+			clauseEntities=new ConcurrentHashMap<String,Set<String>>();
+			clauseAggregates=new ConcurrentHashMap<String,ClauseAggregate>();
+			dirtyClauses=ConcurrentHashMap.newKeySet();
+			resultIndex=new RuleEngineResultIndex();
+			changes=new RuleEngineChangeLog();
+			
 			
 			// start up the rule engine
 			ArrayList<String> ruleNames=settings.getDocumentReference();
@@ -132,28 +158,82 @@ public class RuleEngineComplianceCheck  {
 			overrideData=_overrideData;
 			timeData=_timeData;
 			identityData=_identityData;
+			// the clause index is not saved, it is rebuilt from the entities
+			clauseEntities=new ConcurrentHashMap<String,Set<String>>();
+			clauseAggregates=new ConcurrentHashMap<String,ClauseAggregate>();
+			dirtyClauses=ConcurrentHashMap.newKeySet();
+			// the result index and change log are not saved either, clients holding an old sequence number fetch everything again
+			resultIndex=new RuleEngineResultIndex();
+			changes=new RuleEngineChangeLog();
+			for (String clauseId: globalResultSet.keySet()) {
+				resultIndex.setResult(clauseId,globalResultSet.get(clauseId));
+				if (timeData.containsKey(clauseId)) resultIndex.setTime(clauseId,timeData.get(clauseId));
+				ClauseAggregate aggregate=getAggregate(clauseId);
+				aggregate.result=globalResultSet.get(clauseId);
+				aggregate.time=timeData.get(clauseId);
+			}
+			for (RuleEngineComplianceObject entity: entities.values()) {
+				entity.setListener(this);
+				for (String clause: entity.getRelevantClauses()) clauseRecorded(entity,clause,null);
+			}
 		}
 		
 		public void updateGlobalResultSet() {
 			if (this.engines==null) return;
 			for (String rule: rulesExecute) {
 					if (engines.get(rule)==null) continue;
-					Collection<RuleEngineResult> results = engines.get(rule).getResults();
-					for (RuleEngineResult r: results) {
-						if (globalResultSet.get(r.getRuleId()) ==null || !globalResultSet.get(r.getRuleId()).equals(r.getResult())){
-								globalResultSet.put(r.getRuleId(),r.getResult());
-								logs.add("New Result:"+r.getRuleId()+"("+r.getResult()+")");
-								timeData.put(r.getRuleId(),LocalDateTime.now());
-						}
-					}
+					Collection<RuleEngineResult> results = engines.get(rule).getResults(rule);
+					for (RuleEngineResult r: results) resultInserted(r.getRuleId(),r.getResult());
 			}
 		}
 		
+		// called by the executors as their sessions insert results, so reading results does not need to go through the sessions
+		public synchronized void resultInserted(String clauseId,String result) {
+			if (globalResultSet.get(clauseId)==null || !globalResultSet.get(clauseId).equals(result)) {
+				recordResult(clauseId,result);
+				logs.add("New Result:"+clauseId+"("+result+")");
+			}
+		}
+		
+		private synchronized void recordResult(String clauseId,String result) {
+			LocalDateTime time=LocalDateTime.now();
+			globalResultSet.put(clauseId,result);
+			timeData.put(clauseId,time);
+			ClauseAggregate aggregate=getAggregate(clauseId);
+			synchronized (aggregate) {
+				aggregate.result=result;
+				aggregate.time=time;
+			}
+			resultIndex.setResult(clauseId,result);
+			resultIndex.setTime(clauseId,time);
+			changes.record(RuleEngineChangeLog.RESULT,clauseId,clauseId,result);
+		}
+		
+		public String getChangeToken() {
+			return changes.getToken();
+		}
+		
+		// the changes after the token since, see RuleEngineChangeLog.since
+		public RuleEngineChangeLog.Changes getChanges(String since) {
+			return changes.since(since);
+		}
+		
+		// the current result of a clause that has changed
+		public ComplianceCheckResultItem getResult(String clauseId,Set<String> fields) {
+			if (!globalResultSet.containsKey(clauseId)) return null;
+			return getResultItem(clauseId,null,null,null,fields);
+		}
+		
 		// as we do not save engine state we need to check engines are running
 		
 		private void restartEngines() {
 			stopEngines();
-			startEngines();
+			startEngines(RuleEngineScheduler.PRIORITY_HIGH);
+		}
+		
+		private String getModelServer() {
+			if (settings==null) return null;
+			return settings.getModelServerURL();
 		}
 		
 		public ComplianceCheckSettings getCheckSettings() {
@@ -161,29 +241,105 @@ public class RuleEngineComplianceCheck  {
 		}
 		
 		public void startEngines() {
+			startEngines(RuleEngineScheduler.PRIORITY_NORMAL);
+		}
+		
+		private void startEngines(int priority) {
 				try {
 						if (engines==null) engines=new HashMap<String,RuleEngineExecutor>();
-						for (String rule: rulesExecute) {
-								RuleEngineExecutor executor=new RuleEngineExecutor(rule,getEntities());
-								engines.put(rule,executor);
+						if (COMPOSITE && rulesExecute.size() > 1) {
+								// one session for all documents, registered under each of them
+								RuleEngineExecutor executor=new RuleEngineExecutor(RuleEngineKieRegistry.getCompositeName(rulesExecute),getEntities());
+								executor.setResultListener(this::resultInserted);
+								for (String rule: rulesExecute) engines.put(rule,executor);
+						} else {
+								for (String rule: rulesExecute) {
+										RuleEngineExecutor executor=new RuleEngineExecutor(rule,getEntities());
+										executor.setResultListener(this::resultInserted);
+										engines.put(rule,executor);
+								}
 						}
-						for (RuleEngineExecutor engine : engines.values()) engine.start();
+						for (RuleEngineExecutor engine : getEngines()) engine.schedule(id,priority);
 				} catch (Exception e) {
+					logs.add("Could not start rule engine:"+e.getMessage());
 					e.printStackTrace();
 				}
 		}
 		
+		// an executor shared by several documents is only listed once
+		private Collection<RuleEngineExecutor> getEngines() {
+			if (engines==null) return Collections.emptyList();
+			return new LinkedHashSet<RuleEngineExecutor>(engines.values());
+		}
+		
 		private void stopEngines() {
 			if (engines==null) return;
-			for (RuleEngineExecutor engine : engines.values()) engine.stopEngine();
+			RuleEngineScheduler.getInstance().cancel(id);
+			for (RuleEngineExecutor engine : getEngines()) engine.stopEngine();
 			updateGlobalResultSet();
 		}
 			
 		
+		private boolean hasLiveEngines() {
+			if (!RuleEngineExecutor.isIncremental() || engines==null || engines.size()==0) return false;
+			for (RuleEngineExecutor engine : getEngines()) {
+				if (!engine.isLive()) return false;
+			}
+			return true;
+		}
+		
+		// entities that received derived results from a changed entity (via transfer rules) need re-evaluating as well
+		private Set<RuleEngineComplianceObject> collectAffectedEntities(Collection<RuleEngineComplianceObject> changed) {
+			Set<RuleEngineComplianceObject> affected=new LinkedHashSet<RuleEngineComplianceObject>(changed);
+			ArrayDeque<RuleEngineComplianceObject> toVisit=new ArrayDeque<RuleEngineComplianceObject>(changed);
+			while (!toVisit.isEmpty()) {
+				RuleEngineComplianceObject current=toVisit.poll();
+				Set<String> clauses=current.getEngineClauses();
+				if (clauses.size()==0) continue;
+				for (RuleEngineComplianceObject entity: entities.values()) {
+					if (affected.contains(entity) || !Collections.disjoint(entity.getType(),current.getType())) continue;
+					if (!Collections.disjoint(entity.getPass(),clauses) || !Collections.disjoint(entity.getFail(),clauses)) {
+						affected.add(entity);
+						toVisit.add(entity);
+					}
+				}
+			}
+			return affected;
+		}
+		
+		private void reevaluateEntities(Collection<RuleEngineComplianceObject> changed) {
+			Set<RuleEngineComplianceObject> affected=collectAffectedEntities(changed);
+			for (RuleEngineComplianceObject entity: affected) entity.requestReset();
+			logs.add("Re-evaluating "+affected.size()+" entities");
+			try {
+				for (RuleEngineExecutor engine : getEngines()) {
+					engine.updateEntities(affected);
+					engine.schedule(id,RuleEngineScheduler.PRIORITY_HIGH);
+				}
+			} catch (Exception e) {
+				logs.add("Could not start rule engine:"+e.getMessage());
+				e.printStackTrace();
+			}
+		}
+		
 		public void submitIdSet(List<String> idSet) {
-			if (createEntities(idSet)) {
+			// a new id set means the model has changed, so data cached from it cannot be reused
+			RuleEngineModelCache.invalidate(getModelServer());
+			List<RuleEngineComplianceObject> newEntities=createEntities(idSet);
+			if (newEntities.size() > 0) {
 				//if there are new entities we need to re-run the engine
-				if (!finished) restartEngines();
+				if (finished) return;
+				if (hasLiveEngines()) {
+					try {
+						for (RuleEngineExecutor engine : getEngines()) {
+							engine.insertEntities(newEntities);
+							engine.schedule(id,RuleEngineScheduler.PRIORITY_HIGH);
+						}
+					} catch (Exception e) {
+						logs.add("Could not start rule engine:"+e.getMessage());
+						e.printStackTrace();
+					}
+				} else restartEngines();
 			}
 		}
   
@@ -228,12 +384,25 @@ public class RuleEngineComplianceCheck  {
 		}
 		
 		public boolean isInProgress() {
-			for (RuleEngineExecutor e: engines.values()) {
+			if (engines==null) return false;
+			for (RuleEngineExecutor e: getEngines()) {
 				if (e.isRunning()) return true;
 			}
 			return false;
 		}
 		
+		// completes once every rule engine of this check has finished its latest run
+		public CompletableFuture<RuleEngineComplianceCheck> getCompletion() {
+			if (engines==null || engines.size()==0) return CompletableFuture.completedFuture(this);
+			List<CompletableFuture<RuleEngineExecutor>> runs=new ArrayList<CompletableFuture<RuleEngineExecutor>>();
+			for (RuleEngineExecutor e: getEngines()) runs.add(e.getCompletion());
+			return CompletableFuture.allOf(runs.toArray(new CompletableFuture[runs.size()])).handle((result,error) -> this);
+		}
+		
+		public void onCompletion(Runnable listener) {
+			getCompletion().thenRun(listener);
+		}
+		
 		public void submitMessage(String message) {
 				messages.add(message);
 		}
@@ -241,30 +410,38 @@ public class RuleEngineComplianceCheck  {
 		public void initalise() throws InterruptedException,ExecutionException {
 			if (dataSource!=null) {
 				//fetch the initial set of objects and properties
-				List<String> idSet = dataSource.getIDSet().get();
+				List<String> idSet = RuleEngineConcurrencyLimiter.call(dataSource,() -> dataSource.getIDSet());
+				RuleEngineModelCache.recordIdSet(getModelServer(),idSet);
 				logs.add("Fetched "+idSet.size()+" objects from BIM");
 				HashMap<String,Integer> objectLists = new HashMap<String,Integer>();
 				HashSet<String> removeList = new HashSet<String>();
 				LOGGER.info("Fetching types");
 				createEntities(idSet);
+				// the type and name of each entity are fetched concurrently, results are collected here as they complete
+				List<RuleEngineComplianceObject> discover=new ArrayList<RuleEngineComplianceObject>();
 				for (RuleEngineComplianceObject entity: entities.values()) {
-						if (entity.getType().size()==0) {
-							//get the type of the entity
-							Future<List<String>> data = dataSource.getData(entity.getId(),"type", "","");
-
-							String t = data.get().get(0);
+						if (entity.getType().size()==0) discover.add(entity);
+				}
+				ExecutorService discoveryPool=Executors.newFixedThreadPool(Math.max(1,Math.min(DISCOVERY_THREADS,discover.size())));
+				try {
+					CompletionService<SimpleEntry<RuleEngineComplianceObject,String>> discovery=new ExecutorCompletionService<SimpleEntry<RuleEngineComplianceObject,String>>(discoveryPool);
+					for (RuleEngineComplianceObject entity: discover) discovery.submit(() -> discoverEntity(entity));
+					int progressStep=Math.max(1,discover.size()/10);
+					for (int i=1; i <= discover.size(); i++) {
+							SimpleEntry<RuleEngineComplianceObject,String> discovered=discovery.take().get();
+							RuleEngineComplianceObject entity=discovered.getKey();
+							String t=discovered.getValue();
 							if (t==null || t.equals("")) removeList.add(entity.getId());
 							else {
-								String[] types = t.split(":");
 								LOGGER.info(t+"("+entity.getId()+")");
-								for (String type: types) entity.setType(type.toLowerCase());
 								if (!objectLists.containsKey(entity.getTypeString())) objectLists.put(entity.getTypeString(),0);
 								objectLists.put(entity.getTypeString(),objectLists.get(entity.getTypeString())+1);
-								entity.getFriendlyName();
 							}
-
-						}
-				 }
+							if (i%progressStep==0 || i==discover.size()) logs.add("Fetched types of "+i+"/"+discover.size()+" objects");
+					}
+				} finally {
+					discoveryPool.shutdownNow();
+				}
 				for (String r: removeList) entities.remove(r);
 				logs.add("Loaded objects:");
 				for (String oL:objectLists.keySet()) logs.add(oL+"="+objectLists.get(oL));
@@ -272,16 +449,36 @@ public class RuleEngineComplianceCheck  {
 			startEngines();
 		}
 		
+		private SimpleEntry<RuleEngineComplianceObject,String> discoverEntity(RuleEngineComplianceObject entity) throws InterruptedException,ExecutionException {
+			//get the type of the entity
+			String t = entity.fetchData("type").get(0);
+			if (t!=null && !t.equals("")) {
+				String[] types = t.split(":");
+				for (String type: types) entity.setType(type.toLowerCase());
+				entity.getFriendlyName();
+			}
+			return new SimpleEntry<RuleEngineComplianceObject,String>(entity,t);
+		}
+		
 		//methods that get called by the java interface
 		
 		public void setDataSources(DataSourceService _dataSource,ServiceCertificate certificate) {
 			dataSource = _dataSource;
+			RuleEngineConcurrencyLimiter.register(dataSource,getModelServer());
 			dataSourceCache = DCOM.getServiceLookup().getDataSources();
 			for (DataSourceService dS: dataSourceCache) dS.setDefaultCertificate(certificate);
 			for (RuleEngineComplianceObject obj: entities.values()) {
 				obj.setDataSourceCache(dataSourceCache);
 				obj.setDataSource(dataSource);
+				obj.setModelServer(getModelServer());
 			}
+			updateRouter();
+		}
+		
+		// property routing depends on both the dictionary and the data sources so it is rebuilt when either changes
+		private void updateRouter() {
+			router=new RuleEngineDataSourceRouter(dictionary,dataSource,dataSourceCache);
+			for (RuleEngineComplianceObject obj: entities.values()) obj.setRouter(router);
 		}
 		
 		public Collection<RuleEngineComplianceObject> getEntities() {
@@ -291,6 +488,7 @@ public class RuleEngineComplianceCheck  {
 		public void setDictionary(DictionaryService _dictionary) {
 			dictionary = _dictionary;
 			for (RuleEngineComplianceObject obj: entities.values()) obj.setDictionary(dictionary);
+			updateRouter();
 		}
 		
 		
@@ -298,24 +496,32 @@ public class RuleEngineComplianceCheck  {
 			return entities.keySet();
 		}
 		
+		// entities are ordered by id
+		public RuleEnginePage<RuleEngineComplianceObject> getEntities(String cursor,int limit) {
+			return RuleEnginePage.of(new TreeSet<String>(entities.keySet()),cursor,limit,entityId -> entities.get(entityId));
+		}
+		
 		public ComplianceCheckEntityInformation getEntity(String id) {
 			return (ComplianceCheckEntityInformation)entities.get(id);
 		}
 		
-		private boolean createEntities(List<String> ids) {
-			boolean newEntity=false;
+		private List<RuleEngineComplianceObject> createEntities(List<String> ids) {
+			List<RuleEngineComplianceObject> newEntities=new ArrayList<RuleEngineComplianceObject>();
 			for (String id:ids) {
 				if (!entities.containsKey(id)) {
 					//add it
-					newEntity=true;
 					RuleEngineComplianceObject obj=new RuleEngineComplianceObject(id);
 					obj.setDataSource(dataSource);
 					obj.setDictionary(dictionary);
 					obj.setDataSourceCache(dataSourceCache);
+					obj.setModelServer(getModelServer());
+					obj.setRouter(router);
+					obj.setListener(this);
 					entities.put(id,obj);
+					newEntities.add(obj);
 				}
 			}
-			return newEntity;
+			return newEntities;
 		}
 		
 		public Set<String> getPropertiesForEntity(String entityId) {
@@ -323,11 +529,41 @@ public class RuleEngineComplianceCheck  {
 		}
 		
 		public Set<String> getEntitiesForClause(String clauseId) {
-				Set<String> entitiesForClause=new HashSet<String>();
-				for (String entity: entities.keySet()) {
-						if (entities.get(entity).getRelevantClauses().contains(clauseId)) entitiesForClause.add(entity);
-				}
-				return entitiesForClause;
+				Set<String> entitiesForClause=clauseEntities.get(clauseId);
+				if (entitiesForClause==null) return new HashSet<String>();
+				return new HashSet<String>(entitiesForClause);
+		}
+		
+		// called by the entities as the rules use their properties, keeps the clause to entity index and the clause's aggregate up to date
+		public void clauseRecorded(RuleEngineComplianceObject entity,String clause,String property) {
+			clauseEntities.computeIfAbsent(clause,c -> ConcurrentHashMap.newKeySet()).add(entity.getId());
+			for (String type: entity.getType()) resultIndex.addType(clause,type);
+			// a saved check records each clause once with all of its properties
+			Set<String> properties=property==null?entity.getPropertiesForClause(clause):Collections.singleton(property);
+			for (String p: properties) contribute(clause,entity,p,new Contribution(entity,p));
+		}
+		
+		public void statusChanged(RuleEngineComplianceObject entity,String clause,String status) {
+			changes.record(RuleEngineChangeLog.ENTITY,entity.getId(),clause,status);
+		}
+		
+		// only the changed property's reasons and files are taken again, for every clause that uses it
+		public void propertyChanged(RuleEngineComplianceObject entity,String property) {
+			Contribution contribution=new Contribution(entity,property);
+			for (String clause: entity.getClausesForProperty(property)) contribute(clause,entity,property,contribution);
+		}
+		
+		private void contribute(String clause,RuleEngineComplianceObject entity,String property,Contribution contribution) {
+			ClauseAggregate aggregate=getAggregate(clause);
+			synchronized (aggregate) {
+				aggregate.contributions.put(entity.getId()+"|"+property,contribution);
+				aggregate.reasons=null;
+			}
+			dirtyClauses.add(clause);
+		}
+		
+		private ClauseAggregate getAggregate(String clauseId) {
+			return clauseAggregates.computeIfAbsent(clauseId,c -> new ClauseAggregate());
 		}
 		
 		
@@ -353,68 +589,91 @@ public class RuleEngineComplianceCheck  {
 				RuleEngineComplianceObject entity=entities.get(entityId);
 				if (entityId==null) return results;
 				
-				for (String clauseId:entity.getRelevantClauses()) {
-					for (String property:entity.getPropertiesForClause(clauseId)) {
-						if (!property.equals(propertyId)) continue;
-						List<String> supportingFileData=entity.getSupportingFileData(propertyId);
-						List<String> supportingFileContentType=entity.getSupportingFileContentType(propertyId);
-						List<String> reasons=entity.getReasons(propertyId);
-						ComplianceCheckResultItem resultItem=new ComplianceCheckResultItem(clauseId,entity.getResultTime(propertyId),reasons,attributation,entity.getResult(propertyId),supportingFileData,supportingFileContentType);
-						results.add(resultItem);
-					}
+				for (String clauseId:entity.getClausesForProperty(propertyId)) {
+					List<String> supportingFileData=entity.getSupportingFileData(propertyId);
+					List<String> supportingFileContentType=entity.getSupportingFileContentType(propertyId);
+					List<String> reasons=entity.getReasons(propertyId);
+					ComplianceCheckResultItem resultItem=new ComplianceCheckResultItem(clauseId,entity.getResultTime(propertyId),reasons,attributation,entity.getResult(propertyId),supportingFileData,supportingFileContentType);
+					results.add(resultItem);
 				}			
 				return results;
 		}
 		
 		public List<ComplianceCheckResultItem> getResults(LocalDateTime start,LocalDateTime end,String freeText) {
-				updateGlobalResultSet();
-				List<ComplianceCheckResultItem> results=new ArrayList<ComplianceCheckResultItem>();
-				for (String clauseId:globalResultSet.keySet()) {
-						boolean keep=true;
-						LocalDateTime time=timeData.get(clauseId);
-						if (start!=null && start.compareTo(time) > 0) keep=false;
-						if (end!=null && end.compareTo(time) < 0) keep=false;
-						if (time==null) time=LocalDateTime.now();
-						List<String> reasons=null;
-						String attributation=null;
-						String result=globalResultSet.get(clauseId);
-						List<String> supportingFileData=new ArrayList<String>();
-						List<String> supportingFileContentType=new ArrayList<String>();
-						if (overrideData.containsKey(clauseId)) {
-							//use the manually provided data
-							ComplianceCheckResultSubmission submittedData=overrideData.get(clauseId);
-							reasons=submittedData.getReasons();
-							attributation=identityData.get(clauseId);
-							supportingFileData.add(submittedData.getSupportingFileData());
-							supportingFileContentType.add(submittedData.getSupportingFileContentType());
-						} else {
-							//use the automatically generated data
-							attributation="RuleEngine";
-							reasons=new ArrayList<String>();
-							//now we need to scan all entities for any results related to this
-							for (String currentEntity:entities.keySet()) {
-								RuleEngineComplianceObject entity=entities.get(currentEntity);
-								for (String property:entity.getPropertiesForClause(clauseId)) {
-									List<String> tmpList=entity.getReasons(property);
-									if (tmpList!=null) reasons.addAll(tmpList);
-									tmpList=entity.getSupportingFileData(property);
-									if (tmpList!=null)	supportingFileData.addAll(tmpList);
-									tmpList=entity.getSupportingFileContentType(property);
-									if (tmpList!=null) supportingFileContentType.addAll(tmpList);
-								}
-							}
-						}
-						if (freeText!=null) {
-							boolean foundOne=false;
-							for (String r: reasons) {
-								if (r.contains(freeText)) foundOne=true;
-							}
-							if (!foundOne) keep=false;
-						}		
-						ComplianceCheckResultItem resultItem=new ComplianceCheckResultItem(clauseId,time,reasons,attributation,result,supportingFileData,supportingFileContentType);
-						if (keep) results.add(resultItem);	
+				return getResults(start,end,freeText,null,null,null,null,0,null).getItems();
+		}
+		
+		// results are ordered by clause and narrowed down with the result index, statuses, prefix (of the clause id) and types (of the entities used by the clause) are not applied when null
+		// fields selects what is returned for each result (null for everything, otherwise the reasons and supporting files are only included if "reasons" or "files" are listed)
+		public RuleEnginePage<ComplianceCheckResultItem> getResults(LocalDateTime start,LocalDateTime end,String freeText,Set<String> statuses,String prefix,Set<String> types,String cursor,int limit,Set<String> fields) {
+				if (freeText!=null) {
+					// the reasons of clauses that changed since they were last read are indexed first
+					for (String clauseId: new ArrayList<String>(dirtyClauses)) getClauseAggregate(clauseId);
 				}
-				return results;
+				NavigableSet<String> clauses=resultIndex.query(start,end,statuses,prefix,types,freeText);
+				return RuleEnginePage.of(clauses,cursor,limit,clauseId -> getResultItem(clauseId,start,end,freeText,fields));
+		}
+		
+		private ComplianceCheckResultItem getResultItem(String clauseId,LocalDateTime start,LocalDateTime end,String freeText,Set<String> fields) {
+				ClauseAggregate aggregate=getClauseAggregate(clauseId);
+				List<String> reasons;
+				List<String> supportingFileData;
+				List<String> supportingFileContentType;
+				String attributation;
+				String result;
+				LocalDateTime time;
+				synchronized (aggregate) {
+					reasons=aggregate.reasons;
+					supportingFileData=aggregate.supportingFileData;
+					supportingFileContentType=aggregate.supportingFileContentType;
+					attributation=aggregate.attributation;
+					result=aggregate.result;
+					time=aggregate.time;
+				}
+				if (start!=null && start.compareTo(time) > 0) return null;
+				if (end!=null && end.compareTo(time) < 0) return null;
+				if (time==null) time=LocalDateTime.now();
+				// the index matched the clause, this only catches reasons that changed since, and is only made for the items of one page
+				if (freeText!=null && !RuleEngineResultIndex.matches(reasons,freeText)) return null;
+				if (fields!=null && !fields.contains("reasons")) reasons=new ArrayList<String>();
+				if (fields!=null && !fields.contains("files")) {
+					supportingFileData=new ArrayList<String>();
+					supportingFileContentType=new ArrayList<String>();
+				}
+				return new ComplianceCheckResultItem(clauseId,time,reasons,attributation,result,supportingFileData,supportingFileContentType);
+		}
+		
+		// the reasons and supporting files of a clause, combined from the contributions kept up to date by the entity listeners
+		private ClauseAggregate getClauseAggregate(String clauseId) {
+			ClauseAggregate aggregate=getAggregate(clauseId);
+			dirtyClauses.remove(clauseId);
+			synchronized (aggregate) {
+				if (aggregate.reasons!=null) return aggregate;
+				List<String> reasons=new ArrayList<String>();
+				List<String> supportingFileData=new ArrayList<String>();
+				List<String> supportingFileContentType=new ArrayList<String>();
+				if (overrideData.containsKey(clauseId)) {
+					//use the manually provided data
+					ComplianceCheckResultSubmission submittedData=overrideData.get(clauseId);
+					reasons.addAll(submittedData.getReasons());
+					aggregate.attributation=identityData.get(clauseId);
+					supportingFileData.add(submittedData.getSupportingFileData());
+					supportingFileContentType.add(submittedData.getSupportingFileContentType());
+				} else {
+					//use the automatically generated data of the entity properties used by this clause
+					aggregate.attributation="RuleEngine";
+					for (Contribution contribution: aggregate.contributions.values()) {
+						reasons.addAll(contribution.reasons);
+						supportingFileData.addAll(contribution.supportingFileData);
+						supportingFileContentType.addAll(contribution.supportingFileContentType);
+					}
+				}
+				aggregate.reasons=reasons;
+				aggregate.supportingFileData=supportingFileData;
+				aggregate.supportingFileContentType=supportingFileContentType;
+				resultIndex.setReasons(clauseId,reasons);
+				return aggregate;
+			}
 		}
 		
 		public void submitResults(List<ComplianceCheckResultSubmission> results,String attribution) {
@@ -422,11 +681,16 @@ public class RuleEngineComplianceCheck  {
 			for (ComplianceCheckResultSubmission result: results) {
 				if (overrideData.containsKey(result.getComplianceDocumentReference())) retVal=true;
 				overrideData.put(result.getComplianceDocumentReference(),result);
-				globalResultSet.put(result.getComplianceDocumentReference(),result.getResult());
-				timeData.put(result.getComplianceDocumentReference(),LocalDateTime.now());
+				recordResult(result.getComplianceDocumentReference(),result.getResult());
 				identityData.put(result.getComplianceDocumentReference(),attribution);
+				ClauseAggregate aggregate=getAggregate(result.getComplianceDocumentReference());
+				synchronized (aggregate) {
+					aggregate.reasons=null;
+				}
+				dirtyClauses.add(result.getComplianceDocumentReference());
 			}
-			if (retVal && !finished) {
+			// manual results do not change any facts in a live session so there is nothing to re-evaluate
+			if (retVal && !finished && !hasLiveEngines()) {
 				resetData();
 				restartEngines();
 			}
@@ -438,15 +702,22 @@ public class RuleEngineComplianceCheck  {
 		
 		public void submitAnswers(List<ComplianceCheckAnswer> answers) {
 			boolean returnVal = false;
+			Set<RuleEngineComplianceObject> changed=new LinkedHashSet<RuleEngineComplianceObject>();
 			for (ComplianceCheckAnswer dataItem : answers) {
 				 if (entities.containsKey(dataItem.getId())) {
 					 RuleEngineComplianceObject entity=entities.get(dataItem.getId());
-					 returnVal=entity.setAnswer(dataItem);
+					 if (entity.setAnswer(dataItem)) {
+						 returnVal=true;
+						 changed.add(entity);
+					 }
 				 }
 			}
 			if (returnVal && !finished) {
-				resetData();
-				restartEngines();
+				if (hasLiveEngines()) reevaluateEntities(changed);
+				else {
+					resetData();
+					restartEngines();
+				}
 			}
 		}
 		
@@ -463,4 +734,33 @@ public class RuleEngineComplianceCheck  {
  				restartEngines();
  			}
 		}
-}
\ No newline at end of file
+		
+		// everything shown for a clause, the combined reasons and files are null until they are next read after a change
+		private static class ClauseAggregate {
+			private String result;
+			private LocalDateTime time;
+			private final LinkedHashMap<String,Contribution> contributions=new LinkedHashMap<String,Contribution>();
+			private List<String> reasons;
+			private String attributation;
+			private List<String> supportingFileData;
+			private List<String> supportingFileContentType;
+		}
+		
+		// the reasons and supporting files of one entity property, taken when the property changes
+		private static class Contribution {
+			private final List<String> reasons;
+			private final List<String> supportingFileData;
+			private final List<String> supportingFileContentType;
+			
+			Contribution(RuleEngineComplianceObject entity,String property) {
+				reasons=copy(entity.getReasons(property));
+				supportingFileData=copy(entity.getSupportingFileData(property));
+				supportingFileContentType=copy(entity.getSupportingFileContentType(property));
+			}
+			
+			private static List<String> copy(List<String> values) {
+				if (values==null) return Collections.emptyList();
+				return new ArrayList<String>(values);
+			}
+		}
+}
@@ -34,6 +34,11 @@ import java.util.Arrays;
 import com.owlike.genson.annotation.JsonProperty;
 import java.util.Set;
 import java.time.LocalDateTime;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -53,6 +58,8 @@ public class RuleEngineComplianceObject extends ComplianceCheckEntityInformation
   private HashMap<String,LocalDateTime> timeData;
   
   private transient DataSourceService dataSource;
+  private transient String modelServer;
+  private transient volatile RuleEngineDataSourceRouter router;
   private transient DictionaryService dictionary;
   private transient Set<DataSourceService> dataSourceCache;
   private transient HashSet<String> pass;
@@ -60,6 +67,15 @@ public class RuleEngineComplianceObject extends ComplianceCheckEntityInformation
   private transient HashSet<String> applicable;
   private transient HashSet<String> notApplicable;
   private transient HashSet<String> rdCache ;
+  private transient boolean offline;
+  private transient ConcurrentHashMap<String,CompletableFuture<List<String>>> rawValues;
+  private transient ConcurrentHashMap<String,CompletableFuture<Boolean>> pendingAnswers;
+  private transient Set<String> abandonedAnswers;
+  private transient volatile boolean resetPending;
+  private transient HashMap<String,Set<String>> clauseProperties;
+  private transient RuleEngineEntityListener listener;
+  
+  private static final boolean LOCAL_COMPARE=RuleEngineConfiguration.getBoolean(RuleEngineConfiguration.LOCAL_COMPARE,false);
   
   private static final Logger LOGGER = LoggerFactory.getLogger( RuleEngineComplianceObject.class );
 
@@ -83,6 +99,10 @@ public class RuleEngineComplianceObject extends ComplianceCheckEntityInformation
       notApplicable = new HashSet<String>();
       engineVariables.put("NotApplicable",notApplicable);
       rdCache = new HashSet<String>();
+      rawValues = new ConcurrentHashMap<String,CompletableFuture<List<String>>>();
+      pendingAnswers = new ConcurrentHashMap<String,CompletableFuture<Boolean>>();
+      abandonedAnswers = ConcurrentHashMap.newKeySet();
+      clauseProperties = new HashMap<String,Set<String>>();
   }
   public RuleEngineComplianceObject(@JsonProperty("id") String _id,@JsonProperty("type") HashSet<String> _type,@JsonProperty("friendlyName") String _friendlyName,@JsonProperty("propertiesCache")  HashMap<String,Boolean> _propertiesCache,@JsonProperty("missValues")  HashMap<String,String> _missValues,@JsonProperty("fileData") HashMap<String,List<String>> _fileData, @JsonProperty("fileTypes") HashMap<String,List<String>> _fileTypes, @JsonProperty("engineVariables") HashMap<String,HashSet<String>> _engineVariables,@JsonProperty("engineFeedback") HashMap<String,List<String>> _engineFeedback,@JsonProperty("clauseOccurance") HashMap<String,Set<String>> _clauseOccurance,@JsonProperty("timeData") HashMap<String,LocalDateTime> _timeData) {
     super(_id);
@@ -101,34 +121,118 @@ public class RuleEngineComplianceObject extends ComplianceCheckEntityInformation
     fail=engineVariables.get("Fail");
     applicable=engineVariables.get("Applicable");
     rdCache = new HashSet<String>();
+    rawValues = new ConcurrentHashMap<String,CompletableFuture<List<String>>>();
+    pendingAnswers = new ConcurrentHashMap<String,CompletableFuture<Boolean>>();
+    abandonedAnswers = ConcurrentHashMap.newKeySet();
+    // the clause index is not saved, it is rebuilt from the clause occurrences
+    clauseProperties = new HashMap<String,Set<String>>();
+    for (String property: clauseOccurance.keySet()) {
+      for (String clause: clauseOccurance.get(property)) indexClause(clause,property);
+    }
   }
 
   //methods call by the server side code
   
   public void setDataSource(DataSourceService _dataSource) {
     dataSource=_dataSource;
+    router=null;
+  }
+  
+  public void setRouter(RuleEngineDataSourceRouter _router) {
+    router=_router;
+  }
+  
+  public void setModelServer(String _modelServer) {
+    modelServer=_modelServer;
   }
   
   public void setDataSourceCache(Set<DataSourceService> _dataSourceCache) {
     dataSourceCache = _dataSourceCache;
+    router=null;
   }
   
   public void setDictionary(DictionaryService _dictionary) {
     dictionary=_dictionary;
+    router=null;
+  }
+  
+  public void setListener(RuleEngineEntityListener _listener) {
+    listener=_listener;
+  }
+  
+  // offline entities have all their data up front, anything missing is reported as required data rather than fetched or waited for
+  public void setOffline(boolean _offline) {
+    offline=_offline;
+  }
+  
+  public void setPropertyResult(String variable,String target,boolean value) {
+    synchronized (this) {
+      propertiesCache.put(variable+":"+target,value);
+      timeData.put(variable+":"+target,LocalDateTime.now());
+    }
+    completeAnswer(variable+":"+target,value);
+  }
+  
+  private void completeAnswer(String key,boolean value) {
+    CompletableFuture<Boolean> answerWait=pendingAnswers.remove(key);
+    if (answerWait!=null) answerWait.complete(value);
+  }
+  
+  // releases anything waiting on an answer that could not be fetched, without caching a result
+  // the rules have already used false for it, so a later answer must trigger a re-evaluation
+  private void abandonAnswer(String key,CompletableFuture<Boolean> answerWait) {
+    abandonedAnswers.add(key);
+    pendingAnswers.remove(key,answerWait);
+    answerWait.complete(false);
+  }
+  
+  // the statuses are cleared by the next rule engine run that picks the entity up, not while a session may still be firing on it
+  public void requestReset() {
+    resetPending=true;
+  }
+  
+  public synchronized void applyPendingReset() {
+    if (!resetPending) return;
+    resetPending=false;
+    resetData();
   }
   
+  // only the statuses are cleared, the feedback explains cached properties that will not be fetched again
   public void resetData() {
     for (String k: engineVariables.keySet()) engineVariables.get(k).clear();
-    for (String k: engineFeedback.keySet()) engineVariables.get(k).clear();
+    if (listener!=null) listener.statusChanged(this,null,null);
   }
   
+  private void statusChanged(String clause,String status) {
+    if (listener!=null) listener.statusChanged(this,clause,status);
+  }
   
-  public Set<String> getPropertiesForClause(String clause) {
-      Set<String> propsForClause=new HashSet<String>();
-      for (String prop:clauseOccurance.keySet()){
-        if (clauseOccurance.get(prop).contains(clause)) propsForClause.add(prop);
-      }
-      return propsForClause;
+  private void propertyChanged(String property) {
+    if (listener!=null) listener.propertyChanged(this,property);
+  }
+  
+  public Set<String> getEngineClauses() {
+    Set<String> clauses=new HashSet<String>();
+    for (HashSet<String> variable: engineVariables.values()) clauses.addAll(variable);
+    return clauses;
+  }
+  
+  
+  public synchronized Set<String> getPropertiesForClause(String clause) {
+      Set<String> propsForClause=clauseProperties.get(clause);
+      if (propsForClause==null) return new HashSet<String>();
+      return new HashSet<String>(propsForClause);
+  }
+  
+  public synchronized Set<String> getClausesForProperty(String property) {
+      Set<String> clauses=clauseOccurance.get(property);
+      if (clauses==null) return new HashSet<String>();
+      return new HashSet<String>(clauses);
+  }
+  
+  private void indexClause(String clause,String property) {
+    if (!clauseProperties.containsKey(clause)) clauseProperties.put(clause,new HashSet<String>());
+    clauseProperties.get(clause).add(property);
   }
   
   public Set<String> getProperties() {
@@ -137,13 +241,22 @@ public class RuleEngineComplianceObject extends ComplianceCheckEntityInformation
       return props;
   }
   
-  public Set<String> getRelevantClauses() {
-    Set<String> clauses=new HashSet<String>();
-    for (Set<String> clauseSet:clauseOccurance.values()) clauses.addAll(clauseSet);
-    return clauses;
+  public synchronized Set<String> getRelevantClauses() {
+    return new HashSet<String>(clauseProperties.keySet());
   }
   
   public boolean setAnswer(ComplianceCheckAnswer answer) {
+    boolean returnVal;
+    Boolean answerValue;
+    synchronized (this) {
+      returnVal=storeAnswer(answer);
+      answerValue=propertiesCache.get(answer.getPropertyId());
+    }
+    if (answerValue!=null) completeAnswer(answer.getPropertyId(),answerValue);
+    return returnVal;
+  }
+  
+  private boolean storeAnswer(ComplianceCheckAnswer answer) {
     boolean answerValue;
     boolean returnVal=false;
     if (answer.getAnswer().equals("true")) {
@@ -151,7 +264,7 @@ public class RuleEngineComplianceObject extends ComplianceCheckEntityInformation
     } else if (answer.getAnswer().equals("false")) {
       answerValue=false;
     } else return false;
-    if (propertiesCache.containsKey(answer.getPropertyId())) {
+    if (abandonedAnswers.remove(answer.getPropertyId()) || propertiesCache.containsKey(answer.getPropertyId())) {
       returnVal=true;
     }
     propertiesCache.put(answer.getPropertyId(),answerValue);
@@ -160,6 +273,7 @@ public class RuleEngineComplianceObject extends ComplianceCheckEntityInformation
     if (!fileTypes.containsKey(answer.getPropertyId())) fileTypes.put(answer.getPropertyId(),new ArrayList<String>());
     fileData.get(answer.getPropertyId()).add(answer.getSupportingFileData());
     fileTypes.get(answer.getPropertyId()).add(answer.getSupportingFileContentType());
+    propertyChanged(answer.getPropertyId().split(":")[0]);
     timeData.put(answer.getPropertyId(),LocalDateTime.now());
 
     for (int i=0; i < requiredData.size();i++) {
@@ -180,7 +294,7 @@ public class RuleEngineComplianceObject extends ComplianceCheckEntityInformation
   public String getFriendlyName() {
 		if (friendlyName.equals("TBC")) {
       	try {
-          friendlyName = dataSource.getData(getId(),"name", "","").get().get(0);
+          friendlyName = fetchData(dataSource,"name").get(0);
         } catch (Exception e) {
           friendlyName="TBC";
         }
@@ -231,93 +345,246 @@ public class RuleEngineComplianceObject extends ComplianceCheckEntityInformation
   
   // utility functions to be called from rule engine
 
-  public synchronized boolean get(String variable, String comparator, String target,String unit,String rule) {
+  public boolean get(String variable, String comparator, String target,String unit,String rule) {
+    String key=variable+":"+target;
+    CompletableFuture<Boolean> answerWait=null;
+    boolean fetching=false;
     try {
       //this will look up the property and fetch from data source via the dictionary
-      if (propertiesCache.containsKey(variable+":"+target)) return propertiesCache.get(variable+":"+target);
-      if (!clauseOccurance.containsKey(variable)) clauseOccurance.put(variable,new HashSet<String>());
-      if (!engineFeedback.containsKey(variable)) engineFeedback.put(variable,new ArrayList<String>());
-      
-      clauseOccurance.get(variable).add(rule);
-      
-
-      DictionaryItem selectedItem=dictionary.getProperty(getType(),variable);
-      if (selectedItem==null) {
-          LOGGER.error("Could not find "+variable+" for "+rule+" on "+getId()+getTypeString());
-          return false;
+      synchronized (this) {
+        if (!clauseOccurance.containsKey(variable)) clauseOccurance.put(variable,new HashSet<String>());
+        if (!engineFeedback.containsKey(variable)) engineFeedback.put(variable,new ArrayList<String>());
+        
+        // recorded even when the answer is cached, answers may have been prefetched or submitted before the rule was reached
+        if (clauseOccurance.get(variable).add(rule)) {
+          indexClause(rule,variable);
+          if (listener!=null) listener.clauseRecorded(this,rule,variable);
+        }
+        if (propertiesCache.containsKey(key)) return propertiesCache.get(key);
+        
+        if (!offline) {
+          answerWait=pendingAnswers.get(key);
+          if (answerWait==null) {
+            answerWait=new CompletableFuture<Boolean>();
+            pendingAnswers.put(key,answerWait);
+            fetching=true;
+          }
+        }
       }
+      // another evaluation is already fetching or waiting for this answer
+      if (!offline && !fetching) return RuleEngineScheduler.await(answerWait);
       
-      DataSourceService selectedDs = null;
-      for (DataSourceService dS: dataSourceCache) {
-        if (selectedItem.getApplication()!=null && dS.getName().startsWith(selectedItem.getApplication())){
-          selectedDs = dS;
-          break;
+      if (offline) {
+        // offline entities only have their raw values, so they are always compared here whatever DCOM_RULEENGINE_LOCAL_COMPARE says
+        Boolean localResult=RuleEngineComparator.compare(getRawValue(null,variable),comparator,target,unit,getRouter().route(getType(),getTypeString(),variable).getItem());
+        if (localResult!=null) {
+          setPropertyResult(variable,target,localResult);
+          return localResult;
         }
+        addRequiredData(variable,target,unit,rule);
+        return false;
       }
-      if (selectedDs==null) {
-        if (selectedItem.getApplication()!=null)   LOGGER.info("Could not find datasource for "+selectedItem.getApplication());
-        selectedDs = dataSource;
+    } catch (Exception e) {
+      e.printStackTrace();
+      return false;
+    }
+    
+    try {
+      RuleEngineDataSourceRouter.Route route=route(variable,rule);
+      if (route==null || route.getDataSource()==null) {
+        abandonAnswer(key,answerWait);
+        return false;
+      }
+      DictionaryItem selectedItem=route.getItem();
+      DataSourceService selectedDs = route.getDataSource();
+      synchronized (this) {
+        engineFeedback.get(variable).add("Aquired from "+(selectedDs.getName()==null?"BIM":selectedDs.getName()));
+        propertyChanged(variable);
       }
-      selectedDs = dataSource;
-      engineFeedback.get(variable).add("Aquired from "+(selectedDs.getName()==null?"BIM":selectedDs.getName()));
       String logText="["+(selectedDs.getName()==null?"BIM":selectedDs.getName())+"]["+getId()+"]"+variable+comparator+target+unit;
-      ComplianceCheckAnswer answer = selectedDs.getAnswer(getId(),variable,comparator,target,unit,rule).get().get(0);
+      Boolean localResult=compareLocally(selectedDs,selectedItem,variable,comparator,target,unit);
+      if (localResult!=null) {
+        setPropertyResult(variable,target,localResult);
+        if (!localResult) LOGGER.info(logText+"->false");
+        return localResult;
+      }
+      ComplianceCheckAnswer answer = fetchAnswer(selectedDs,variable,comparator,target,unit,rule);
       if (answer.isJob()) {
-      
-          try {
-            Thread.sleep(5000);
-          } catch (Exception e) {
-            e.printStackTrace();
-          }
-          answer=selectedDs.getAnswerFromJobId(getId(),answer.getJobId()).get().get(0);
-      } 
-      
-      if (answer.getAnswer().equals("unknown") || answer.isJob()) {
-        logText+="->Unknown";
-        if (!rdCache.contains(variable+":"+target)) {
-          ComplianceCheckRequiredDataItem rD= new ComplianceCheckRequiredDataItem(variable+":"+target,variable,unit,rule);
-          requiredData.add(rD);
-          rdCache.add(variable+":"+target);
-        }
+        // the job tracker polls the data source and records the answer once the job has finished
+        LOGGER.info(logText+"->Job "+answer.getJobId());
+        RuleEngineJobTracker.track(selectedDs,getId(),answer.getJobId()).whenComplete((result,error) -> {
+          if (result!=null) recordAnswer(result,variable,target,unit,rule);
+          else addRequiredData(variable,target,unit,rule);
+        });
       } else {
-        logText+="->"+answer.getAnswer();
+        if (answer.getAnswer().equals("unknown")) logText+="->Unknown";
+        else logText+="->"+answer.getAnswer();
+        recordAnswer(answer,variable,target,unit,rule);
+        if (answer.getAnswer().equalsIgnoreCase("false") || answer.getAnswer().equalsIgnoreCase("Unknown")) LOGGER.info(logText);
+      }
+      
+      // completed by setAnswer once the answer is known, only this property waits
+      return RuleEngineScheduler.await(answerWait);
+    } catch (Exception e) {
+      // the data source failed, timed out or is unavailable, the property is reported as required data and evaluation continues without it
+      LOGGER.error("Could not fetch "+variable+" on "+getId()+":"+e.getMessage());
+      addRequiredData(variable,target,unit,rule);
+      abandonAnswer(key,answerWait);
+    }
+    return false;
+  }
+
+  
+  
+  private void recordAnswer(ComplianceCheckAnswer answer,String variable,String target,String unit,String rule) {
+    if (answer.getAnswer().equals("unknown") || answer.isJob()) addRequiredData(variable,target,unit,rule);
+    else setAnswer(answer);
+  }
+  
+  private synchronized void addRequiredData(String variable,String target,String unit,String rule) {
+    if (!rdCache.contains(variable+":"+target)) {
+      ComplianceCheckRequiredDataItem rD= new ComplianceCheckRequiredDataItem(variable+":"+target,variable,unit,rule);
+      requiredData.add(rD);
+      rdCache.add(variable+":"+target);
+    }
+  }
+  
+  // routes are resolved once per entity type and property by the check's router
+  private RuleEngineDataSourceRouter.Route route(String variable,String rule) {
+    RuleEngineDataSourceRouter.Route route=getRouter().route(getType(),getTypeString(),variable);
+    if (route.getItem()==null) {
+      LOGGER.error("Could not find "+variable+" for "+rule+" on "+getId()+getTypeString());
+      return null;
+    }
+    return route;
+  }
+  
+  private RuleEngineDataSourceRouter getRouter() {
+    RuleEngineDataSourceRouter currentRouter=router;
+    if (currentRouter==null) {
+      currentRouter=new RuleEngineDataSourceRouter(dictionary,dataSource,dataSourceCache);
+      router=currentRouter;
+    }
+    return currentRouter;
+  }
+
+  
+  // fetches an answer ahead of the rules without waiting for jobs, unknown answers are left for get() to report as required data
+  public void prefetch(String variable, String comparator, String target,String unit,String rule) {
+    synchronized (this) {
+      if (offline || propertiesCache.containsKey(variable+":"+target)) return;
+    }
+    try {
+      RuleEngineDataSourceRouter.Route route=route(variable,rule);
+      if (route==null || route.getDataSource()==null) return;
+      DictionaryItem selectedItem=route.getItem();
+      DataSourceService selectedDs = route.getDataSource();
+      Boolean localResult=compareLocally(selectedDs,selectedItem,variable,comparator,target,unit);
+      if (localResult!=null) {
+        setPropertyResult(variable,target,localResult);
+        return;
+      }
+      ComplianceCheckAnswer answer = fetchAnswer(selectedDs,variable,comparator,target,unit,rule);
+      if (answer.isJob() || answer.getAnswer().equals("unknown")) return;
+      synchronized (this) {
+        if (!engineFeedback.containsKey(variable)) engineFeedback.put(variable,new ArrayList<String>());
+        engineFeedback.get(variable).add("Aquired from "+(selectedDs.getName()==null?"BIM":selectedDs.getName()));
+        propertyChanged(variable);
         setAnswer(answer);
       }
-      if (answer.getAnswer().equalsIgnoreCase("false") || answer.getAnswer().equalsIgnoreCase("Unknown")) LOGGER.info(logText);
-    
-      while (!propertiesCache.containsKey(variable+":"+target)) {
-        try {
-          Thread.sleep(1000);
-        } catch (Exception e) {
-          e.printStackTrace();
-        }
+    } catch (Exception e) {
+      LOGGER.error("Could not prefetch "+variable+" on "+getId()+":"+e.getMessage());
+    }
+  }
+  
+  // the comparison made against the raw value of the property, or null when it has to be made by the data source
+  private Boolean compareLocally(DataSourceService selectedDs,DictionaryItem selectedItem,String variable,String comparator,String target,String unit) {
+    if (!LOCAL_COMPARE) return null;
+    return RuleEngineComparator.compare(getRawValue(selectedDs,variable),comparator,target,unit,selectedItem);
+  }
+  
+  // each property is only fetched once however many targets it is compared against
+  private List<String> getRawValue(DataSourceService selectedDs,String variable) {
+    CompletableFuture<List<String>> value=rawValues.get(variable);
+    if (value==null) {
+      if (selectedDs==null) return null;
+      CompletableFuture<List<String>> fetch=new CompletableFuture<List<String>>();
+      value=rawValues.putIfAbsent(variable,fetch);
+      if (value==null) {
+        value=fetch;
+        fetch.complete(fetchRawValue(selectedDs,variable));
       }
-    
-      return propertiesCache.get(variable+":"+target);
+    }
+    try {
+      // another rule may be fetching the same value, its worker is parked while it waits
+      return RuleEngineScheduler.await(value,RuleEngineConcurrencyLimiter.getCallTimeout());
     } catch (Exception e) {
-      e.printStackTrace();
+      return null;
     }
-    return false;
   }
   
+  private List<String> fetchRawValue(DataSourceService selectedDs,String variable) {
+    try {
+      List<String> values=fetchData(selectedDs,variable);
+      if (values==null || values.size()==0 || values.get(0)==null || values.get(0).equalsIgnoreCase("unknown")) return new ArrayList<String>();
+      return values;
+    } catch (Exception e) {
+      LOGGER.error("Could not fetch "+variable+" on "+getId()+":"+e.getMessage());
+      return new ArrayList<String>();
+    }
+  }
+  
+  // data from the check's model server is shared with other checks through the model cache, other data sources are cached under the same key as their concurrency limit
+  private String getCacheScope(DataSourceService selectedDs) {
+    if (selectedDs==dataSource && modelServer!=null) return modelServer;
+    return RuleEngineConcurrencyLimiter.getKey(selectedDs);
+  }
+  
+  public List<String> fetchData(String property) throws InterruptedException,ExecutionException {
+    return fetchData(dataSource,property);
+  }
+  
+  private List<String> fetchData(DataSourceService selectedDs,String property) throws InterruptedException,ExecutionException {
+    String scope=getCacheScope(selectedDs);
+    List<String> values=RuleEngineModelCache.getData(scope,getId(),property);
+    if (values!=null) return values;
+    values=RuleEngineConcurrencyLimiter.call(selectedDs,() -> selectedDs.getData(getId(),property,"",""));
+    if (values!=null && values.size() > 0) RuleEngineModelCache.putData(scope,getId(),property,values);
+    return values;
+  }
+  
+  private ComplianceCheckAnswer fetchAnswer(DataSourceService selectedDs,String variable, String comparator, String target,String unit,String rule) throws InterruptedException,ExecutionException,TimeoutException {
+    String scope=getCacheScope(selectedDs);
+    String request=variable+"|"+comparator+"|"+target+"|"+unit;
+    ComplianceCheckAnswer answer=RuleEngineModelCache.getAnswer(scope,getId(),request);
+    if (answer!=null) return answer;
+    answer=RuleEngineRequestBatcher.getAnswer(selectedDs,getId(),variable,comparator,target,unit,rule).get(RuleEngineConcurrencyLimiter.getCallTimeout(),TimeUnit.MILLISECONDS);
+    if (!answer.isJob() && !answer.getAnswer().equals("unknown")) RuleEngineModelCache.putAnswer(scope,getId(),request,answer);
+    return answer;
+  }
+  
+  // raw values known up front, for example in batch evaluation
+  public void setRawValue(String variable,List<String> values) {
+    rawValues.put(variable,CompletableFuture.completedFuture(values));
+  }
   
   public void setNotApplicable(String clauseName) {
-    notApplicable.add(clauseName);
+    if (notApplicable.add(clauseName)) statusChanged(clauseName,"NotApplicable");
     //LOGGER.info(clauseName+"("+getId()+")"+getTypeString()+"->NA");
   }
   
   public void setApplicable(String clauseName) {
-    applicable.add(clauseName);
+    if (applicable.add(clauseName)) statusChanged(clauseName,"Applicable");
     //LOGGER.info(clauseName+"("+getId()+")"+getTypeString()+"->A");
   }
 
   public void setPass(String clauseName) {
-    pass.add(clauseName);
+    if (pass.add(clauseName)) statusChanged(clauseName,"Pass");
    //LOGGER.info(clauseName+"("+getId()+")"+getTypeString()+"->Pass");
   }
 
   public void setFail(String clauseName) {
-    fail.add(clauseName);
+    if (fail.add(clauseName)) statusChanged(clauseName,"Fail");
     //LOGGER.info(clauseName+"("+getId()+")"+getTypeString()+"->Fail");
   }
 
@@ -0,0 +1,328 @@
+/*
+Copyright (C) 2022 Cardiff University
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+*/
+package org.dcom.ruleengine.core;
+
+import org.dcom.core.services.DataSourceService;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+* This class limits the number of calls in flight to each data source. The limit is adapted additive increase / multiplicative decrease: it grows by one per round of successful calls and is halved when a call fails or takes much longer than the fastest recent call.
+* Every call has a deadline of DCOM_RULEENGINE_CALL_TIMEOUT milliseconds, including the time spent waiting for the limit, and is refused while the data source's circuit breaker is open.
+* Data sources are identified by the model server they were registered with, or otherwise by name, so that all checks against the same server share one limit.
+* Calls made with callAsync wait for the limit in a queue rather than on a thread, they are started in order as earlier calls finish.
+*
+*/
+public class RuleEngineConcurrencyLimiter {
+
+	private static final int INITIAL_LIMIT=RuleEngineConfiguration.getInt(RuleEngineConfiguration.LIMIT_INITIAL,16);
+	private static final int MIN_LIMIT=Math.max(1,RuleEngineConfiguration.getInt(RuleEngineConfiguration.LIMIT_MIN,1));
+	private static final int MAX_LIMIT=RuleEngineConfiguration.getInt(RuleEngineConfiguration.LIMIT_MAX,256);
+	private static final double LATENCY_TOLERANCE=2.0;
+	private static final long CALL_TIMEOUT=RuleEngineConfiguration.getInt(RuleEngineConfiguration.CALL_TIMEOUT,60000);
+
+	private static final ConcurrentHashMap<String,RuleEngineConcurrencyLimiter> limiters=new ConcurrentHashMap<String,RuleEngineConcurrencyLimiter>();
+	private static final Map<DataSourceService,String> dataSourceKeys=new WeakHashMap<DataSourceService,String>();
+
+	private static ScheduledExecutorService timer;
+	private static ExecutorService waiterPool;
+
+	private static final Logger LOGGER = LoggerFactory.getLogger( RuleEngineConcurrencyLimiter.class );
+
+	private final String key;
+	private final ArrayDeque<Waiter<?>> waiters=new ArrayDeque<Waiter<?>>();
+	private final RuleEngineCircuitBreaker breaker;
+	private final LongAdder timeouts=new LongAdder();
+	private double limit;
+	private int inFlight;
+	private int queued;
+	private double minLatency;
+	private long lastDecrease;
+	private long successes;
+	private long failures;
+	private long totalLatency;
+	private long acquired;
+	private long totalQueueTime;
+	private long maxQueueTime;
+
+	private RuleEngineConcurrencyLimiter(String _key) {
+		key=_key;
+		breaker=new RuleEngineCircuitBreaker(_key);
+		limit=Math.max(MIN_LIMIT,Math.min(INITIAL_LIMIT,MAX_LIMIT));
+		minLatency=-1;
+	}
+
+	public static void register(DataSourceService dataSource,String key) {
+		if (dataSource==null || key==null) return;
+		synchronized (dataSourceKeys) {
+			dataSourceKeys.put(dataSource,key);
+		}
+	}
+
+	// the model server a data source was registered with, otherwise its name, unnamed data sources are the BIM
+	public static String getKey(DataSourceService dataSource) {
+		String key;
+		synchronized (dataSourceKeys) {
+			key=dataSourceKeys.get(dataSource);
+		}
+		if (key==null) key=dataSource.getName()==null?"BIM":dataSource.getName();
+		return key;
+	}
+
+	public static RuleEngineConcurrencyLimiter forDataSource(DataSourceService dataSource) {
+		return limiters.computeIfAbsent(getKey(dataSource),RuleEngineConcurrencyLimiter::new);
+	}
+
+	public static long getCallTimeout() {
+		return CALL_TIMEOUT;
+	}
+
+	public static <T> T call(DataSourceService dataSource,Supplier<Future<T>> request) throws InterruptedException,ExecutionException {
+		return forDataSource(dataSource).call(request);
+	}
+
+	public <T> T call(Supplier<Future<T>> request) throws InterruptedException,ExecutionException {
+		return callAsync(request).get();
+	}
+
+	public static <T> CompletableFuture<T> callAsync(DataSourceService dataSource,Supplier<Future<T>> request) {
+		return forDataSource(dataSource).callAsync(request);
+	}
+
+	// the request is made as soon as the limit allows, no thread waits for the limit or (for data sources returning a CompletableFuture) for the answer
+	public <T> CompletableFuture<T> callAsync(Supplier<Future<T>> request) {
+		CompletableFuture<T> result=new CompletableFuture<T>();
+		if (!breaker.allowRequest()) {
+			result.completeExceptionally(new IllegalStateException("Data source "+key+" is unavailable"));
+			return result;
+		}
+		Waiter<T> waiter=new Waiter<T>(request,result,System.currentTimeMillis()+CALL_TIMEOUT);
+		synchronized (this) {
+			if (waiters.isEmpty() && inFlight < (int)limit) waiter.permit=grant(waiter.requested);
+			else {
+				waiters.add(waiter);
+				queued++;
+			}
+		}
+		if (waiter.permit!=null) start(waiter);
+		else getTimer().schedule(() -> expire(waiter),CALL_TIMEOUT,TimeUnit.MILLISECONDS);
+		return result;
+	}
+
+	private <T> void start(Waiter<T> waiter) {
+		Future<T> future;
+		try {
+			future=waiter.request.get();
+		} catch (RuntimeException e) {
+			finish(waiter,null,e);
+			return;
+		}
+		CompletableFuture<T> answer;
+		if (future instanceof CompletableFuture) answer=(CompletableFuture<T>)future;
+		else answer=CompletableFuture.supplyAsync(() -> {
+			try {
+				return future.get();
+			} catch (ExecutionException e) {
+				throw new CompletionException(e.getCause());
+			} catch (InterruptedException e) {
+				throw new CompletionException(e);
+			}
+		},getWaiterPool());
+		ScheduledFuture<?> timeout=getTimer().schedule(() -> {
+			if (waiter.finished.get()) return;
+			future.cancel(true);
+			timeouts.increment();
+			finish(waiter,null,new TimeoutException("Timed out calling "+key));
+		},Math.max(1,waiter.deadline-System.currentTimeMillis()),TimeUnit.MILLISECONDS);
+		answer.whenComplete((value,error) -> {
+			timeout.cancel(false);
+			finish(waiter,value,error);
+		});
+	}
+
+	private <T> void finish(Waiter<T> waiter,T value,Throwable error) {
+		if (!waiter.finished.compareAndSet(false,true)) return;
+		if (error instanceof CompletionException && error.getCause()!=null) error=error.getCause();
+		release(waiter.permit,error==null);
+		if (error==null) waiter.result.complete(value);
+		else waiter.result.completeExceptionally(error);
+	}
+
+	// a queued call that has not been started before its deadline
+	private void expire(Waiter<?> waiter) {
+		synchronized (this) {
+			if (!waiters.remove(waiter)) return;
+			queued--;
+		}
+		timedOut();
+		waiter.result.completeExceptionally(new TimeoutException("Timed out waiting to call "+key));
+	}
+
+	private static synchronized ScheduledExecutorService getTimer() {
+		if (timer==null) {
+			timer=Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread=new Thread(runnable,"RuleEngineConcurrencyLimiter");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		return timer;
+	}
+
+	// waits on the answers of data sources that only return a plain Future, at most one thread per call in flight
+	private static synchronized ExecutorService getWaiterPool() {
+		if (waiterPool==null) {
+			AtomicInteger count=new AtomicInteger();
+			waiterPool=Executors.newCachedThreadPool(runnable -> {
+				Thread thread=new Thread(runnable,"RuleEngineCallWaiter-"+count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		return waiterPool;
+	}
+
+	// a call that could not even be started counts against the data source's health
+	private void timedOut() {
+		timeouts.increment();
+		breaker.recordFailure();
+	}
+
+	private Permit grant(long requested) {
+		long now=System.nanoTime();
+		long queueTime=(now-requested)/1000000;
+		inFlight++;
+		acquired++;
+		totalQueueTime+=queueTime;
+		maxQueueTime=Math.max(maxQueueTime,queueTime);
+		return new Permit(now);
+	}
+
+	private void release(Permit permit,boolean success) {
+		List<Waiter<?>> ready=new ArrayList<Waiter<?>>();
+		synchronized (this) {
+			adapt(permit,success);
+			// start queued calls in order as far as the (possibly reduced) limit allows
+			while (!waiters.isEmpty() && inFlight < (int)limit) {
+				Waiter<?> waiter=waiters.poll();
+				queued--;
+				waiter.permit=grant(waiter.requested);
+				ready.add(waiter);
+			}
+		}
+		for (Waiter<?> waiter: ready) start(waiter);
+	}
+
+	private void adapt(Permit permit,boolean success) {
+		inFlight--;
+		long now=System.nanoTime();
+		long latency=(now-permit.started)/1000000;
+		if (success) breaker.recordSuccess();
+		else breaker.recordFailure();
+		if (success) {
+			successes++;
+			totalLatency+=latency;
+			if (minLatency < 0 || latency < minLatency) minLatency=latency;
+			// let the baseline drift up slowly so a single very fast call does not hold it down forever
+			else minLatency=minLatency*0.99+latency*0.01;
+		} else failures++;
+		if (!success || (minLatency >= 0 && latency > Math.max(1.0,minLatency)*LATENCY_TOLERANCE)) {
+			// decrease at most once per round trip, calls already in flight report the same overload
+			if (now-lastDecrease > Math.max(latency,1)*1000000L) {
+				limit=Math.max(MIN_LIMIT,limit/2);
+				lastDecrease=now;
+				LOGGER.info("Reduced concurrency limit for "+key+" to "+(int)limit);
+			}
+		} else {
+			limit=Math.min(MAX_LIMIT,limit+1.0/limit);
+		}
+	}
+
+	public synchronized String toJSON() {
+		StringBuffer str=new StringBuffer();
+		str.append("{\"limit\":").append((int)limit);
+		str.append(",\"inFlight\":").append(inFlight);
+		str.append(",\"queued\":").append(queued);
+		str.append(",\"successes\":").append(successes);
+		str.append(",\"failures\":").append(failures);
+		str.append(",\"averageLatency\":").append(successes==0?0:((double)totalLatency)/successes);
+		str.append(",\"averageQueueTime\":").append(acquired==0?0:((double)totalQueueTime)/acquired);
+		str.append(",\"maxQueueTime\":").append(maxQueueTime);
+		str.append(",\"timeouts\":").append(timeouts.sum());
+		str.append(",\"circuit\":").append(breaker.toJSON());
+		str.append("}");
+		return str.toString();
+	}
+
+	public static String toJSONAll() {
+		StringBuffer str=new StringBuffer();
+		str.append("{");
+		boolean first=true;
+		for (Map.Entry<String,RuleEngineConcurrencyLimiter> entry: new TreeMap<String,RuleEngineConcurrencyLimiter>(limiters).entrySet()) {
+			if (first) first=false; else str.append(",");
+			str.append("\"").append(entry.getKey().replace("\"","\\\"")).append("\":").append(entry.getValue().toJSON());
+		}
+		str.append("}");
+		return str.toString();
+	}
+
+	private static class Permit {
+		private final long started;
+
+		Permit(long _started) {
+			started=_started;
+		}
+	}
+
+	private static class Waiter<T> {
+		private final Supplier<Future<T>> request;
+		private final CompletableFuture<T> result;
+		private final long deadline;
+		private final long requested;
+		private final AtomicBoolean finished=new AtomicBoolean();
+		private Permit permit;
+
+		Waiter(Supplier<Future<T>> _request,CompletableFuture<T> _result,long _deadline) {
+			request=_request;
+			result=_result;
+			deadline=_deadline;
+			requested=System.nanoTime();
+		}
+	}
+}
@@ -0,0 +1,88 @@
+/*
+Copyright (C) 2022 Cardiff University
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+*/
+package org.dcom.ruleengine.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+* This class reads the tuning parameters of the rule engine from environment variables, falling back to defaults when they are not set.
+*
+*/
+public class RuleEngineConfiguration {
+
+	public static final String WORKERS="DCOM_RULEENGINE_WORKERS";
+	public static final String PARKED_WORKERS="DCOM_RULEENGINE_PARKED_WORKERS";
+	public static final String QUEUE_SIZE="DCOM_RULEENGINE_QUEUE_SIZE";
+	public static final String INCREMENTAL="DCOM_RULEENGINE_INCREMENTAL";
+	public static final String ARTIFACT_PATH="DCOM_RULEENGINE_ARTIFACT_PATH";
+	public static final String SESSION_POOL_SIZE="DCOM_RULEENGINE_SESSION_POOL_SIZE";
+	public static final String BATCH_THREADS="DCOM_RULEENGINE_BATCH_THREADS";
+	public static final String PROFILE="DCOM_RULEENGINE_PROFILE";
+	public static final String PROFILE_INTERVAL="DCOM_RULEENGINE_PROFILE_INTERVAL";
+	public static final String COMPOSITE="DCOM_RULEENGINE_COMPOSITE";
+	public static final String PARTITION_SIZE="DCOM_RULEENGINE_PARTITION_SIZE";
+	public static final String PARTITION_THREADS="DCOM_RULEENGINE_PARTITION_THREADS";
+	public static final String PARTITION_LANES="DCOM_RULEENGINE_PARTITION_LANES";
+	public static final String PREFETCH="DCOM_RULEENGINE_PREFETCH";
+	public static final String PREFETCH_THREADS="DCOM_RULEENGINE_PREFETCH_THREADS";
+	public static final String PREFETCH_TIMEOUT="DCOM_RULEENGINE_PREFETCH_TIMEOUT";
+	public static final String REQUEST_WINDOW="DCOM_RULEENGINE_REQUEST_WINDOW";
+	public static final String REQUEST_BATCH_SIZE="DCOM_RULEENGINE_REQUEST_BATCH_SIZE";
+	public static final String REQUEST_THREADS="DCOM_RULEENGINE_REQUEST_THREADS";
+	public static final String JOB_POLL_INITIAL="DCOM_RULEENGINE_JOB_POLL_INITIAL";
+	public static final String JOB_POLL_MAX="DCOM_RULEENGINE_JOB_POLL_MAX";
+	public static final String JOB_TIMEOUT="DCOM_RULEENGINE_JOB_TIMEOUT";
+	public static final String LOCAL_COMPARE="DCOM_RULEENGINE_LOCAL_COMPARE";
+	public static final String MODEL_CACHE_SIZE="DCOM_RULEENGINE_MODEL_CACHE_SIZE";
+	public static final String MODEL_CACHE_TTL="DCOM_RULEENGINE_MODEL_CACHE_TTL";
+	public static final String DISCOVERY_THREADS="DCOM_RULEENGINE_DISCOVERY_THREADS";
+	public static final String LIMIT_INITIAL="DCOM_RULEENGINE_LIMIT_INITIAL";
+	public static final String LIMIT_MIN="DCOM_RULEENGINE_LIMIT_MIN";
+	public static final String LIMIT_MAX="DCOM_RULEENGINE_LIMIT_MAX";
+	public static final String CALL_TIMEOUT="DCOM_RULEENGINE_CALL_TIMEOUT";
+	public static final String BREAKER_FAILURES="DCOM_RULEENGINE_BREAKER_FAILURES";
+	public static final String BREAKER_RESET="DCOM_RULEENGINE_BREAKER_RESET";
+	public static final String CHANGE_BUFFER="DCOM_RULEENGINE_CHANGE_BUFFER";
+	public static final String CREATE_TIMEOUT="DCOM_RULEENGINE_CREATE_TIMEOUT";
+
+	private static final Logger LOGGER = LoggerFactory.getLogger( RuleEngineConfiguration.class );
+
+	public static String getString(String name,String defaultValue) {
+		String value=System.getenv(name);
+		if (value==null || value.trim().equals("")) return defaultValue;
+		return value.trim();
+	}
+
+	public static int getInt(String name,int defaultValue) {
+		String value=getString(name,null);
+		if (value==null) return defaultValue;
+		try {
+			return Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			LOGGER.error("Invalid value for "+name+":"+value);
+			return defaultValue;
+		}
+	}
+
+	public static boolean getBoolean(String name,boolean defaultValue) {
+		String value=getString(name,null);
+		if (value==null) return defaultValue;
+		return value.equalsIgnoreCase("true") || value.equals("1");
+	}
+}
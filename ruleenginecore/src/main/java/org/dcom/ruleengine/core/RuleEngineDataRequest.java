@@ -0,0 +1,70 @@
+/*
+Copyright (C) 2022 Cardiff University
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+*/
+package org.dcom.ruleengine.core;
+
+/**
+* This class describes a single property request made to a data source, it is used to pass batches of requests to a RuleEngineBulkDataSource.
+*
+*/
+public class RuleEngineDataRequest {
+
+	private final String id;
+	private final String variable;
+	private final String comparator;
+	private final String target;
+	private final String unit;
+	private final String rule;
+
+	public RuleEngineDataRequest(String _id,String _variable,String _comparator,String _target,String _unit,String _rule) {
+		id=_id;
+		variable=_variable;
+		comparator=_comparator;
+		target=_target;
+		unit=_unit;
+		rule=_rule;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public String getVariable() {
+		return variable;
+	}
+
+	public String getComparator() {
+		return comparator;
+	}
+
+	public String getTarget() {
+		return target;
+	}
+
+	public String getUnit() {
+		return unit;
+	}
+
+	public String getRule() {
+		return rule;
+	}
+
+	// identical requests from different rules only need to be made once
+	public String getKey() {
+		return id+"|"+variable+"|"+comparator+"|"+target+"|"+unit;
+	}
+}
@@ -0,0 +1,99 @@
+/*
+Copyright (C) 2022 Cardiff University
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+*/
+package org.dcom.ruleengine.core;
+
+import org.dcom.core.services.DataSourceService;
+import org.dcom.core.services.DictionaryItem;
+import org.dcom.core.services.DictionaryService;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+* This class routes property requests of a compliance check to the data source that owns them. The dictionary item of each (entity type, property) pair and the data source of each application are resolved once and then reused for every request.
+* Properties whose application has no matching data source are sent to the check's model server.
+*
+*/
+public class RuleEngineDataSourceRouter {
+
+	private static final Route NO_ROUTE=new Route(null,null);
+
+	private final DictionaryService dictionary;
+	private final DataSourceService defaultDataSource;
+	private final Set<DataSourceService> dataSources;
+	private final ConcurrentHashMap<String,Route> routes;
+	private final ConcurrentHashMap<String,DataSourceService> applications;
+
+	private static final Logger LOGGER = LoggerFactory.getLogger( RuleEngineDataSourceRouter.class );
+
+	public RuleEngineDataSourceRouter(DictionaryService _dictionary,DataSourceService _defaultDataSource,Set<DataSourceService> _dataSources) {
+		dictionary=_dictionary;
+		defaultDataSource=_defaultDataSource;
+		dataSources=_dataSources;
+		routes=new ConcurrentHashMap<String,Route>();
+		applications=new ConcurrentHashMap<String,DataSourceService>();
+	}
+
+	// the route of a property for an entity type, its dictionary item is null if the dictionary does not know the property
+	public Route route(Set<String> type,String typeString,String property) {
+		Route route=routes.get(typeString+"|"+property);
+		if (route!=null) return route;
+		return routes.computeIfAbsent(typeString+"|"+property,key -> resolve(type,property));
+	}
+
+	private Route resolve(Set<String> type,String property) {
+		if (dictionary==null) return NO_ROUTE;
+		DictionaryItem item=dictionary.getProperty(type,property);
+		if (item==null) return NO_ROUTE;
+		return new Route(item,getDataSource(item.getApplication()));
+	}
+
+	private DataSourceService getDataSource(String application) {
+		if (application==null || dataSources==null) return defaultDataSource;
+		DataSourceService dataSource=applications.computeIfAbsent(application,this::findDataSource);
+		return dataSource==null?defaultDataSource:dataSource;
+	}
+
+	private DataSourceService findDataSource(String application) {
+		for (DataSourceService dS: dataSources) {
+			if (dS.getName()!=null && dS.getName().startsWith(application)) return dS;
+		}
+		LOGGER.info("Could not find datasource for "+application);
+		return defaultDataSource;
+	}
+
+	public static class Route {
+
+		private final DictionaryItem item;
+		private final DataSourceService dataSource;
+
+		Route(DictionaryItem _item,DataSourceService _dataSource) {
+			item=_item;
+			dataSource=_dataSource;
+		}
+
+		public DictionaryItem getItem() {
+			return item;
+		}
+
+		public DataSourceService getDataSource() {
+			return dataSource;
+		}
+	}
+}
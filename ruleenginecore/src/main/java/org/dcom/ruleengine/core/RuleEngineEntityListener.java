@@ -0,0 +1,34 @@
+/*
+Copyright (C) 2022 Cardiff University
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+*/
+package org.dcom.ruleengine.core;
+
+/**
+* This interface is implemented by objects that keep indexes over the entities of a compliance check up to date, it is called by RuleEngineComplianceObject as the rules use its properties.
+*
+*/
+public interface RuleEngineEntityListener {
+
+	public void clauseRecorded(RuleEngineComplianceObject entity,String clause,String property);
+
+	// the reasons or supporting files of the property have changed
+	public void propertyChanged(RuleEngineComplianceObject entity,String property);
+
+	// the entity passed, failed or became (not) applicable to a clause, clause and status are null when all of its statuses were cleared
+	public void statusChanged(RuleEngineComplianceObject entity,String clause,String status);
+
+}
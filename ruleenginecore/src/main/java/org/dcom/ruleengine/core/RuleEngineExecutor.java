@@ -18,12 +18,16 @@ along with this program.  If not, see <https://www.gnu.org/licenses/>.
 package org.dcom.ruleengine.core;
 
 
-import org.kie.api.KieServices;
-import org.kie.api.runtime.KieContainer;
-import org.kie.api.builder.ReleaseId;
 import org.kie.api.runtime.KieSession;
-import org.kie.api.KieBase;
+import org.kie.api.runtime.rule.FactHandle;
 import java.util.Collection;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.kie.api.runtime.ObjectFilter;
@@ -34,14 +38,34 @@ import org.kie.api.event.rule.ObjectUpdatedEvent;
 
 
 /**
-* This class manages the rule engine in its own separate thread. This separation is needed so that when a rule engine is waiting for data input it does not cause the overall rule engine service to freeze.
+* This class manages the rule engine session of a compliance check for one compliance document, its runs are executed on a worker of the RuleEngineScheduler. This separation is needed so that when a rule engine is waiting for data input it does not cause the overall rule engine service to freeze.
+* In incremental mode (DCOM_RULEENGINE_INCREMENTAL) the session is kept alive between runs so that new or changed entities only need to be updated in working memory rather than the whole session rebuilt.
+* Large models (see RuleEnginePartitioner) have their per entity rules evaluated in parallel shards on the first run, this session then only has to fire the cross entity rules.
+* With a composite rule base (see RuleEngineKieRegistry) one session evaluates several compliance documents, each result is attributed to the document of the rule that inserted it.
 *
 */
-public class RuleEngineExecutor extends Thread {
+public class RuleEngineExecutor implements Runnable {
+	
+	private static final boolean INCREMENTAL=RuleEngineConfiguration.getBoolean(RuleEngineConfiguration.INCREMENTAL,false);
+	
+	public static final String[] AGENDA_GROUPS={"sort","compute","summary"};
 	
 	private KieSession ruleSession;
-	private boolean running;
+	private volatile boolean running;
+	private boolean scheduled;
+	private volatile boolean stopped;
+	private volatile boolean disposed;
+	private boolean evaluated;
+	private volatile boolean firing;
 	private String ruleName;
+	private HashMap<String,FactHandle> factHandles;
+	private ConcurrentHashMap<String,String> resultDocuments;
+	private LinkedHashSet<RuleEngineComplianceObject> pendingInserts;
+	private LinkedHashSet<RuleEngineComplianceObject> pendingUpdates;
+	private Collection<RuleEngineResult> finalResults;
+	private RunFutures nextRun;
+	private final Object pendingLock=new Object();
+	private final Object runLock=new Object();
 	
 	private static final Logger LOGGER = LoggerFactory.getLogger( RuleEngineExecutor.class );
 	
@@ -49,42 +73,221 @@ public class RuleEngineExecutor extends Thread {
 		LOGGER.info("Setting up Rule Engine");
 		ruleName=_ruleName;
 		running=false;
-		KieServices ks = KieServices.Factory.get();
-		ReleaseId releaseId = ks.newReleaseId("org.dcom.rules", ruleName, "1.0");
-		KieContainer ruleContainer = ks.newKieContainer(releaseId);
-		KieBase kieBase=ruleContainer.getKieBase("dcom");
-		ruleSession=kieBase.newKieSession();
+		scheduled=false;
+		stopped=false;
+		disposed=false;
+		evaluated=false;
+		firing=false;
+		factHandles=new HashMap<String,FactHandle>();
+		pendingInserts=new LinkedHashSet<RuleEngineComplianceObject>();
+		pendingUpdates=new LinkedHashSet<RuleEngineComplianceObject>();
+		nextRun=new RunFutures();
+		ruleSession=RuleEngineKieRegistry.newKieSession(ruleName);
 		ruleSession.addEventListener(new LoggerListener());
-		for (RuleEngineComplianceObject o: entities) ruleSession.insert(o);
+		resultDocuments=new ConcurrentHashMap<String,String>();
+		if (RuleEngineKieRegistry.isComposite(ruleName)) ruleSession.addEventListener(new ResultAttributionListener(ruleName,resultDocuments));
+		if (RuleEngineProfiler.isEnabled()) ruleSession.addEventListener(new RuleEngineProfiler.Listener());
+		for (RuleEngineComplianceObject o: entities) factHandles.put(o.getId(),ruleSession.insert(o));
+	}
+	
+	public static boolean isIncremental() {
+		return INCREMENTAL;
+	}
+	
+	// told the clause and result of each result the session inserts, as it is inserted
+	public void setResultListener(BiConsumer<String,String> listener) {
+		ruleSession.addEventListener(new ResultListener(listener));
+	}
+
+	public void schedule(String checkId,int priority) {
+		synchronized (pendingLock) {
+			// a queued run will pick up any pending work when it starts
+			if (scheduled) return;
+			scheduled=true;
+			running=true;
+			if (nextRun.started) nextRun=new RunFutures();
+		}
+		try {
+			RuleEngineScheduler.getInstance().submit(checkId,priority,this);
+		} catch (RuntimeException e) {
+			RunFutures failedRun;
+			synchronized (pendingLock) {
+				scheduled=false;
+				running=false;
+				failedRun=nextRun;
+				failedRun.started=true;
+			}
+			failedRun.completeExceptionally(e);
+			throw e;
+		}
+	}
+	
+	public void insertEntities(Collection<RuleEngineComplianceObject> entities) {
+		synchronized (pendingLock) {
+			pendingInserts.addAll(entities);
+		}
+	}
+	
+	public void updateEntities(Collection<RuleEngineComplianceObject> entities) {
+		synchronized (pendingLock) {
+			pendingUpdates.addAll(entities);
+		}
 	}
 
 	public void run() {
-		running=true;
-		LOGGER.info("Starting Rule Engine:"+ruleName);
-		ruleSession.getAgenda().getAgendaGroup("sort").setFocus();
-		ruleSession.fireAllRules();
-		ruleSession.getAgenda().getAgendaGroup("compute").setFocus();
-		ruleSession.fireAllRules();
-		ruleSession.getAgenda().getAgendaGroup("summary").setFocus();
-		ruleSession.fireAllRules();
-		ruleSession.dispose();
-		LOGGER.info("Rule Engine Finished:"+ruleName);
-		running=false;
+		synchronized (runLock) {
+			List<RuleEngineComplianceObject> inserts;
+			List<RuleEngineComplianceObject> updates;
+			RunFutures currentRun;
+			synchronized (pendingLock) {
+				scheduled=false;
+				currentRun=nextRun;
+				currentRun.started=true;
+				if (stopped || disposed) {
+					running=false;
+					currentRun.complete(this);
+					return;
+				}
+				running=true;
+				// set under the same lock stopEngine takes, so a stop either prevents this run or leaves the session to it
+				firing=true;
+				inserts=new ArrayList<RuleEngineComplianceObject>(pendingInserts);
+				updates=new ArrayList<RuleEngineComplianceObject>(pendingUpdates);
+				pendingInserts.clear();
+				pendingUpdates.clear();
+			}
+			try {
+				LOGGER.info("Starting Rule Engine:"+ruleName);
+				if (inserts.size() > 0 || updates.size() > 0) {
+					// summary results are recomputed from the current entity state
+					for (FactHandle result: ruleSession.getFactHandles(new ResultObjectFilter())) ruleSession.delete(result);
+					for (RuleEngineComplianceObject o: inserts) {
+						if (!factHandles.containsKey(o.getId())) factHandles.put(o.getId(),ruleSession.insert(o));
+					}
+					for (RuleEngineComplianceObject o: updates) {
+						// changed entities are reset here, under the run lock, so a firing session never sees them half cleared
+						o.applyPendingReset();
+						FactHandle handle=factHandles.get(o.getId());
+						if (handle!=null) ruleSession.update(handle,o);
+					}
+					LOGGER.info("Re-evaluating "+inserts.size()+" new and "+updates.size()+" changed entities:"+ruleName);
+				}
+				if (!evaluated) {
+					List<RuleEngineComplianceObject> entities=new ArrayList<RuleEngineComplianceObject>();
+					for (FactHandle handle: factHandles.values()) entities.add((RuleEngineComplianceObject)ruleSession.getObject(handle));
+					RuleEnginePrefetcher.prefetch(ruleName,entities);
+					if (RuleEnginePartitioner.isPartitioned(entities.size())) {
+						RuleEnginePartitioner.evaluate(ruleName,entities);
+						// the shards changed the entities outside this session
+						for (FactHandle handle: factHandles.values()) ruleSession.update(handle,ruleSession.getObject(handle));
+					}
+				} else if (inserts.size() > 0) RuleEnginePrefetcher.prefetch(ruleName,inserts);
+				evaluated=true;
+				for (String group: AGENDA_GROUPS) {
+					// a halted session would otherwise carry on with the next agenda group
+					if (stopped) break;
+					long startTime=System.nanoTime();
+					ruleSession.getAgenda().getAgendaGroup(group).setFocus();
+					ruleSession.fireAllRules();
+					if (RuleEngineProfiler.isEnabled()) RuleEngineProfiler.recordAgendaGroup(group,System.nanoTime()-startTime);
+					currentRun.phases.get(group).complete(group);
+				}
+				LOGGER.info("Rule Engine Finished:"+ruleName);
+			} catch (RuntimeException e) {
+				currentRun.completeExceptionally(e);
+				throw e;
+			} finally {
+				synchronized (pendingLock) {
+					firing=false;
+					// the session is only ever released by the thread that fired it
+					if (stopped || !INCREMENTAL) dispose();
+					if (!scheduled) running=false;
+				}
+				currentRun.complete(this);
+			}
+		}
 	}
 	
 	public boolean isRunning(){
 		return running;
 	}
 	
+	// completes when the latest scheduled run (or the one in progress if nothing further is scheduled) has finished
+	public CompletableFuture<RuleEngineExecutor> getCompletion() {
+		synchronized (pendingLock) {
+			return nextRun.completion;
+		}
+	}
+	
+	public CompletableFuture<String> getPhaseCompletion(String group) {
+		synchronized (pendingLock) {
+			return nextRun.phases.get(group);
+		}
+	}
+	
+	public boolean isLive() {
+		return !stopped && !disposed;
+	}
 	
 	public Collection<RuleEngineResult> getResults() {
+		if (disposed) return finalResults;
 		return (Collection<RuleEngineResult>)ruleSession.getObjects(new ResultObjectFilter());
 	}
 	
+	// the results of one compliance document, for a composite session only those inserted by that document's rules
+	public Collection<RuleEngineResult> getResults(String document) {
+		Collection<RuleEngineResult> results=getResults();
+		if (!RuleEngineKieRegistry.isComposite(ruleName)) return results;
+		List<RuleEngineResult> documentResults=new ArrayList<RuleEngineResult>();
+		for (RuleEngineResult r: results) {
+			if (document.equals(resultDocuments.get(r.getRuleId()))) documentResults.add(r);
+		}
+		return documentResults;
+	}
+	
+	// must hold pendingLock with no run firing, the session is reset and reused by another run
+	private void dispose() {
+		if (disposed) return;
+		finalResults=new ArrayList<RuleEngineResult>((Collection<RuleEngineResult>)ruleSession.getObjects(new ResultObjectFilter()));
+		disposed=true;
+		RuleEngineKieRegistry.releaseKieSession(ruleName,ruleSession);
+	}
+	
 	public void stopEngine() {
-		ruleSession.halt();
-		ruleSession.dispose();
-		running=false;
+		RunFutures pendingRun;
+		synchronized (pendingLock) {
+			stopped=true;
+			// a firing run is halted and releases the session itself when it finishes
+			if (firing) ruleSession.halt();
+			else dispose();
+			running=false;
+			pendingRun=nextRun;
+		}
+		if (!pendingRun.started) pendingRun.complete(this);
+	}
+	
+	private static class RunFutures {
+		
+		private boolean started;
+		private final CompletableFuture<RuleEngineExecutor> completion;
+		private final HashMap<String,CompletableFuture<String>> phases;
+		
+		RunFutures() {
+			started=false;
+			completion=new CompletableFuture<RuleEngineExecutor>();
+			phases=new HashMap<String,CompletableFuture<String>>();
+			for (String group: AGENDA_GROUPS) phases.put(group,new CompletableFuture<String>());
+		}
+		
+		void complete(RuleEngineExecutor executor) {
+			for (String group: AGENDA_GROUPS) phases.get(group).complete(group);
+			completion.complete(executor);
+		}
+		
+		void completeExceptionally(Throwable e) {
+			for (CompletableFuture<String> phase: phases.values()) phase.completeExceptionally(e);
+			completion.completeExceptionally(e);
+		}
 	}
 
 }
@@ -108,6 +311,54 @@ class LoggerListener implements RuleRuntimeEventListener {
 	}
 }
 
+class ResultAttributionListener implements RuleRuntimeEventListener {
+	
+	private String ruleName;
+	private ConcurrentHashMap<String,String> resultDocuments;
+	
+	ResultAttributionListener(String _ruleName,ConcurrentHashMap<String,String> _resultDocuments) {
+		ruleName=_ruleName;
+		resultDocuments=_resultDocuments;
+	}
+	
+	public void objectInserted(ObjectInsertedEvent event) {
+		if (!(event.getObject() instanceof RuleEngineResult) || event.getRule()==null) return;
+		String document=RuleEngineKieRegistry.getDocument(ruleName,event.getRule().getName());
+		if (document!=null) resultDocuments.put(((RuleEngineResult)event.getObject()).getRuleId(),document);
+	}
+	
+	public void objectUpdated(ObjectUpdatedEvent event) {
+		
+	}
+	
+	public void objectDeleted(ObjectDeletedEvent event) {
+		
+	}
+}
+
+class ResultListener implements RuleRuntimeEventListener {
+	
+	private BiConsumer<String,String> listener;
+	
+	ResultListener(BiConsumer<String,String> _listener) {
+		listener=_listener;
+	}
+	
+	public void objectInserted(ObjectInsertedEvent event) {
+		if (!(event.getObject() instanceof RuleEngineResult)) return;
+		RuleEngineResult result=(RuleEngineResult)event.getObject();
+		listener.accept(result.getRuleId(),result.getResult());
+	}
+	
+	public void objectUpdated(ObjectUpdatedEvent event) {
+		
+	}
+	
+	public void objectDeleted(ObjectDeletedEvent event) {
+		
+	}
+}
+
 class ResultObjectFilter implements ObjectFilter {
 	public boolean accept(Object object) {
 		if (object instanceof RuleEngineResult) return true;
@@ -0,0 +1,145 @@
+/*
+Copyright (C) 2022 Cardiff University
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+*/
+package org.dcom.ruleengine.core;
+
+import org.dcom.core.services.ComplianceCheckAnswer;
+import org.dcom.core.services.DataSourceService;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+* This class tracks the outstanding data source jobs of all compliance checks. A single thread sweeps the jobs and starts a poll of each one that is due without waiting for the answers, backing off each job's poll interval from DCOM_RULEENGINE_JOB_POLL_INITIAL up to DCOM_RULEENGINE_JOB_POLL_MAX while it is still running.
+* A job that has not finished after DCOM_RULEENGINE_JOB_TIMEOUT completes with its last (still running) answer, which is then treated as unknown.
+*
+*/
+public class RuleEngineJobTracker {
+
+	private static final long TICK=100;
+	private static final long POLL_INITIAL=RuleEngineConfiguration.getInt(RuleEngineConfiguration.JOB_POLL_INITIAL,500);
+	private static final long POLL_MAX=RuleEngineConfiguration.getInt(RuleEngineConfiguration.JOB_POLL_MAX,10000);
+	private static final long TIMEOUT=RuleEngineConfiguration.getInt(RuleEngineConfiguration.JOB_TIMEOUT,600000);
+
+	private static final ConcurrentHashMap<String,TrackedJob> jobs=new ConcurrentHashMap<String,TrackedJob>();
+	private static ScheduledExecutorService poller;
+
+	private static final AtomicLong tracked=new AtomicLong();
+	private static final AtomicLong polls=new AtomicLong();
+	private static final AtomicLong completed=new AtomicLong();
+	private static final AtomicLong timedOut=new AtomicLong();
+
+	private static final Logger LOGGER = LoggerFactory.getLogger( RuleEngineJobTracker.class );
+
+	private static synchronized void start() {
+		if (poller!=null) return;
+		poller=Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread=new Thread(runnable,"RuleEngineJobTracker");
+			thread.setDaemon(true);
+			return thread;
+		});
+		poller.scheduleWithFixedDelay(RuleEngineJobTracker::poll,TICK,TICK,TimeUnit.MILLISECONDS);
+	}
+
+	public static CompletableFuture<ComplianceCheckAnswer> track(DataSourceService dataSource,String id,String jobId) {
+		start();
+		String key=RuleEngineConcurrencyLimiter.getKey(dataSource)+"|"+id+"|"+jobId;
+		return jobs.computeIfAbsent(key,k -> {
+			tracked.incrementAndGet();
+			return new TrackedJob(k,dataSource,id,jobId);
+		}).answer;
+	}
+
+	private static void poll() {
+		long now=System.currentTimeMillis();
+		for (TrackedJob job: jobs.values()) {
+			if (job.polling || job.nextPoll > now) continue;
+			// each job is polled on its own within its data source's concurrency limit, one slow data source does not hold up the sweep
+			job.polling=true;
+			polls.incrementAndGet();
+			RuleEngineConcurrencyLimiter.callAsync(job.dataSource,() -> job.dataSource.getAnswerFromJobId(job.id,job.jobId)).whenComplete((answers,error) -> {
+				ComplianceCheckAnswer answer=null;
+				if (error!=null) LOGGER.error("Could not poll job "+job.jobId+" on "+job.id+":"+error.getMessage());
+				else answer=answers.get(0);
+				polled(job,answer);
+			});
+		}
+	}
+
+	private static void polled(TrackedJob job,ComplianceCheckAnswer answer) {
+		if (answer!=null && !answer.isJob()) {
+			finish(job,answer);
+			completed.incrementAndGet();
+		} else if (System.currentTimeMillis()-job.started >= TIMEOUT) {
+			LOGGER.info("Job "+job.jobId+" on "+job.id+" timed out");
+			finish(job,answer);
+			timedOut.incrementAndGet();
+		} else {
+			if (answer!=null) job.lastAnswer=answer;
+			job.interval=Math.min(job.interval*2,POLL_MAX);
+			job.nextPoll=System.currentTimeMillis()+job.interval;
+			job.polling=false;
+		}
+	}
+
+	private static void finish(TrackedJob job,ComplianceCheckAnswer answer) {
+		jobs.remove(job.key);
+		if (answer==null) answer=job.lastAnswer;
+		if (answer==null) job.answer.completeExceptionally(new IllegalStateException("No answer for job "+job.jobId));
+		else job.answer.complete(answer);
+	}
+
+	public static String toJSON() {
+		StringBuffer str=new StringBuffer();
+		str.append("{\"outstanding\":").append(jobs.size());
+		str.append(",\"tracked\":").append(tracked.get());
+		str.append(",\"polls\":").append(polls.get());
+		str.append(",\"completed\":").append(completed.get());
+		str.append(",\"timedOut\":").append(timedOut.get());
+		str.append("}");
+		return str.toString();
+	}
+
+	private static class TrackedJob {
+		private final String key;
+		private final DataSourceService dataSource;
+		private final String id;
+		private final String jobId;
+		private final long started;
+		private final CompletableFuture<ComplianceCheckAnswer> answer;
+		private volatile long interval;
+		private volatile long nextPoll;
+		private volatile boolean polling;
+		private volatile ComplianceCheckAnswer lastAnswer;
+
+		TrackedJob(String _key,DataSourceService _dataSource,String _id,String _jobId) {
+			key=_key;
+			dataSource=_dataSource;
+			id=_id;
+			jobId=_jobId;
+			started=System.currentTimeMillis();
+			answer=new CompletableFuture<ComplianceCheckAnswer>();
+			interval=POLL_INITIAL;
+			nextPoll=started+interval;
+		}
+	}
+}
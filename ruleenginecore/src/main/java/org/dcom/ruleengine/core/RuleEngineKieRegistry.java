@@ -0,0 +1,214 @@
+/*
+Copyright (C) 2022 Cardiff University
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+*/
+package org.dcom.ruleengine.core;
+
+import org.kie.api.KieServices;
+import org.kie.api.runtime.KieContainer;
+import org.kie.api.builder.ReleaseId;
+import org.kie.api.runtime.KieSession;
+import org.kie.api.KieBase;
+import org.kie.api.builder.KieModule;
+import org.kie.api.definition.KiePackage;
+import org.kie.api.definition.rule.Rule;
+import org.drools.core.impl.InternalKnowledgeBase;
+import org.drools.core.impl.KnowledgeBaseFactory;
+import org.drools.compiler.kie.builder.impl.InternalKieModule;
+import org.drools.compiler.kie.builder.impl.KieContainerImpl;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+* This class holds a single KieBase per compiled rule package (org.dcom.rules:ruleName:1.0) for the whole process, so that compliance checks and engine restarts do not have to rebuild the container each time.
+* Pre-built rule artifacts (ruleName.jar) in DCOM_RULEENGINE_ARTIFACT_PATH are loaded directly, otherwise the rule package is resolved from the local maven repository.
+* A composite KieBase combines the rule packages of several compliance documents, it is registered under the document names joined by COMPOSITE_SEPARATOR and remembers which document each rule came from.
+*
+*/
+public class RuleEngineKieRegistry {
+
+	private static final String KIE_GROUP="org.dcom.rules";
+	private static final String KIE_VERSION="1.0";
+	private static final String KIE_BASE="dcom";
+	public static final String COMPOSITE_SEPARATOR="+";
+
+	private static final ConcurrentHashMap<String,KieBase> kieBases=new ConcurrentHashMap<String,KieBase>();
+	private static final ConcurrentHashMap<String,Map<String,String>> ruleDocuments=new ConcurrentHashMap<String,Map<String,String>>();
+	private static final ConcurrentHashMap<String,List<RuleEnginePrefetcher.PrefetchItem>> prefetchItems=new ConcurrentHashMap<String,List<RuleEnginePrefetcher.PrefetchItem>>();
+	private static final ConcurrentHashMap<String,Long> buildTimes=new ConcurrentHashMap<String,Long>();
+	private static final AtomicLong hits=new AtomicLong();
+	private static final AtomicLong misses=new AtomicLong();
+	private static final ConcurrentHashMap<String,RuleEngineSessionPool> sessionPools=new ConcurrentHashMap<String,RuleEngineSessionPool>();
+	private static final int SESSION_POOL_SIZE=RuleEngineConfiguration.getInt(RuleEngineConfiguration.SESSION_POOL_SIZE,16);
+
+	private static final Logger LOGGER = LoggerFactory.getLogger( RuleEngineKieRegistry.class );
+
+	public static KieBase getKieBase(String ruleName) {
+		KieBase kieBase=kieBases.get(ruleName);
+		if (kieBase!=null) {
+			hits.incrementAndGet();
+			return kieBase;
+		}
+		// the document KieBases have to exist before the composite is built, they cannot be built from inside computeIfAbsent
+		if (isComposite(ruleName)) for (String document: getDocumentNames(ruleName)) getKieBase(document);
+		return kieBases.computeIfAbsent(ruleName,RuleEngineKieRegistry::buildKieBase);
+	}
+
+	public static KieSession newKieSession(String ruleName) {
+		return getSessionPool(ruleName).borrow();
+	}
+
+	public static void releaseKieSession(String ruleName,KieSession session) {
+		RuleEngineSessionPool pool=sessionPools.get(ruleName);
+		if (pool==null) session.dispose();
+		else pool.release(session);
+	}
+
+	private static RuleEngineSessionPool getSessionPool(String ruleName) {
+		return sessionPools.computeIfAbsent(ruleName,name -> new RuleEngineSessionPool(getKieBase(name),SESSION_POOL_SIZE));
+	}
+
+	public static String getCompositeName(Collection<String> ruleNames) {
+		List<String> names=new ArrayList<String>(ruleNames);
+		Collections.sort(names);
+		return String.join(COMPOSITE_SEPARATOR,names);
+	}
+
+	public static boolean isComposite(String ruleName) {
+		return ruleName.contains(COMPOSITE_SEPARATOR);
+	}
+
+	public static List<String> getDocumentNames(String ruleName) {
+		if (!isComposite(ruleName)) return Collections.singletonList(ruleName);
+		return Arrays.asList(ruleName.split(Pattern.quote(COMPOSITE_SEPARATOR)));
+	}
+
+	// the compliance document a rule of a composite KieBase was loaded from
+	public static String getDocument(String ruleName,String rule) {
+		if (!isComposite(ruleName)) return ruleName;
+		Map<String,String> documents=ruleDocuments.get(ruleName);
+		if (documents==null) return null;
+		return documents.get(rule);
+	}
+
+	// the requests listed in the prefetch manifest of the rule package, empty if it was compiled without one
+	public static List<RuleEnginePrefetcher.PrefetchItem> getPrefetchItems(String ruleName) {
+		// the manifest is read when the KieBase is built, looking it up is not a use of the KieBase
+		if (!kieBases.containsKey(ruleName)) getKieBase(ruleName);
+		return prefetchItems.getOrDefault(ruleName,Collections.emptyList());
+	}
+
+	private static void loadPrefetchManifest(String ruleName,KieContainer ruleContainer) {
+		try {
+			InternalKieModule module=((KieContainerImpl)ruleContainer).getMainKieModule();
+			if (module==null || !module.isAvailable(RuleEnginePrefetcher.MANIFEST)) return;
+			List<RuleEnginePrefetcher.PrefetchItem> items=RuleEnginePrefetcher.readManifest(new ByteArrayInputStream(module.getBytes(RuleEnginePrefetcher.MANIFEST)));
+			prefetchItems.put(ruleName,items);
+			LOGGER.info("Loaded "+items.size()+" prefetch requests:"+ruleName);
+		} catch (Exception e) {
+			LOGGER.error("Could not load prefetch manifest for "+ruleName+":"+e.getMessage());
+		}
+	}
+
+	private static KieBase buildKieBase(String ruleName) {
+		misses.incrementAndGet();
+		if (isComposite(ruleName)) return buildCompositeKieBase(ruleName);
+		long startTime=System.nanoTime();
+		LOGGER.info("Building Rule Base:"+ruleName);
+		KieServices ks = KieServices.Factory.get();
+		ReleaseId releaseId = ks.newReleaseId(KIE_GROUP, ruleName, KIE_VERSION);
+		String artifactPath=RuleEngineConfiguration.getString(RuleEngineConfiguration.ARTIFACT_PATH,null);
+		if (artifactPath!=null) {
+			File artifact=new File(artifactPath+File.separator+ruleName+".jar");
+			if (artifact.exists()) {
+				KieModule module=ks.getRepository().addKieModule(ks.getResources().newFileSystemResource(artifact));
+				releaseId=module.getReleaseId();
+				LOGGER.info("Loading Rule Artifact:"+artifact.getPath());
+			} else LOGGER.info("No Rule Artifact For "+ruleName+" in "+artifactPath);
+		}
+		KieContainer ruleContainer = ks.newKieContainer(releaseId);
+		KieBase kieBase=ruleContainer.getKieBase(KIE_BASE);
+		loadPrefetchManifest(ruleName,ruleContainer);
+		long buildTime=(System.nanoTime()-startTime)/1000000;
+		buildTimes.put(ruleName,buildTime);
+		LOGGER.info("Built Rule Base:"+ruleName+" in "+buildTime+"ms");
+		return kieBase;
+	}
+
+	private static KieBase buildCompositeKieBase(String ruleName) {
+		long startTime=System.nanoTime();
+		LOGGER.info("Building Composite Rule Base:"+ruleName);
+		InternalKnowledgeBase composite=KnowledgeBaseFactory.newKnowledgeBase();
+		HashMap<String,String> documents=new HashMap<String,String>();
+		List<RuleEnginePrefetcher.PrefetchItem> compositeItems=new ArrayList<RuleEnginePrefetcher.PrefetchItem>();
+		for (String document: getDocumentNames(ruleName)) {
+			Collection<KiePackage> packages=kieBases.get(document).getKiePackages();
+			for (KiePackage kiePackage: packages) {
+				for (Rule rule: kiePackage.getRules()) documents.put(rule.getName(),document);
+			}
+			composite.addPackages(packages);
+			compositeItems.addAll(prefetchItems.getOrDefault(document,Collections.emptyList()));
+		}
+		prefetchItems.put(ruleName,compositeItems);
+		ruleDocuments.put(ruleName,documents);
+		long buildTime=(System.nanoTime()-startTime)/1000000;
+		buildTimes.put(ruleName,buildTime);
+		LOGGER.info("Built Composite Rule Base:"+ruleName+" with "+documents.size()+" rules in "+buildTime+"ms");
+		return composite;
+	}
+
+	public static long getHits() {
+		return hits.get();
+	}
+
+	public static long getMisses() {
+		return misses.get();
+	}
+
+	public static Long getBuildTime(String ruleName) {
+		return buildTimes.get(ruleName);
+	}
+
+	public static String toJSON() {
+		StringBuffer str=new StringBuffer();
+		str.append("{\"hits\":").append(hits.get()).append(",\"misses\":").append(misses.get()).append(",\"buildTimes\":{");
+		boolean first=true;
+		for (String ruleName: buildTimes.keySet()) {
+			if (first) first=false; else str.append(",");
+			str.append("\"").append(ruleName).append("\":").append(buildTimes.get(ruleName));
+		}
+		str.append("},\"sessionPools\":{");
+		first=true;
+		for (String ruleName: sessionPools.keySet()) {
+			if (first) first=false; else str.append(",");
+			str.append("\"").append(ruleName).append("\":").append(sessionPools.get(ruleName).toJSON());
+		}
+		str.append("}}");
+		return str.toString();
+	}
+}
@@ -0,0 +1,153 @@
+/*
+Copyright (C) 2022 Cardiff University
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+*/
+package org.dcom.ruleengine.core;
+
+import org.dcom.core.services.ComplianceCheckAnswer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+* This class caches data fetched from model servers (entity types, names, raw property values and answers) across compliance checks, keyed by model server, entity and property, so that checks re-run against the same model server do not fetch the same data again.
+* The cache holds at most DCOM_RULEENGINE_MODEL_CACHE_SIZE entries (least recently used are evicted), entries expire after DCOM_RULEENGINE_MODEL_CACHE_TTL seconds and a model server's entries are dropped when a new set of ids arrives for it.
+*
+*/
+public class RuleEngineModelCache {
+
+	private static final int MAX_SIZE=RuleEngineConfiguration.getInt(RuleEngineConfiguration.MODEL_CACHE_SIZE,100000);
+	private static final long TTL=RuleEngineConfiguration.getInt(RuleEngineConfiguration.MODEL_CACHE_TTL,600)*1000L;
+
+	private static final LinkedHashMap<String,CacheEntry> entries=new LinkedHashMap<String,CacheEntry>(16,0.75f,true) {
+		protected boolean removeEldestEntry(Map.Entry<String,CacheEntry> eldest) {
+			if (size() <= MAX_SIZE) return false;
+			evictions++;
+			return true;
+		}
+	};
+	private static final HashMap<String,Integer> idSets=new HashMap<String,Integer>();
+
+	private static long hits=0;
+	private static long misses=0;
+	private static long evictions=0;
+	private static long expirations=0;
+	private static long invalidations=0;
+
+	private static final Logger LOGGER = LoggerFactory.getLogger( RuleEngineModelCache.class );
+
+	public static boolean isEnabled() {
+		return MAX_SIZE > 0 && TTL > 0;
+	}
+
+	private static String key(String modelServer,String id,String property) {
+		return modelServer+"|"+id+"|"+property;
+	}
+
+	private static synchronized Object get(String modelServer,String id,String property) {
+		if (!isEnabled() || modelServer==null) return null;
+		String key=key(modelServer,id,property);
+		CacheEntry entry=entries.get(key);
+		if (entry==null) {
+			misses++;
+			return null;
+		}
+		if (entry.expires < System.currentTimeMillis()) {
+			entries.remove(key);
+			expirations++;
+			misses++;
+			return null;
+		}
+		hits++;
+		return entry.value;
+	}
+
+	private static synchronized void put(String modelServer,String id,String property,Object value) {
+		if (!isEnabled() || modelServer==null || value==null) return;
+		entries.put(key(modelServer,id,property),new CacheEntry(value,System.currentTimeMillis()+TTL));
+	}
+
+	public static List<String> getData(String modelServer,String id,String property) {
+		return (List<String>)get(modelServer,id,"data:"+property);
+	}
+
+	public static void putData(String modelServer,String id,String property,List<String> value) {
+		put(modelServer,id,"data:"+property,value==null?null:Collections.unmodifiableList(new ArrayList<String>(value)));
+	}
+
+	public static ComplianceCheckAnswer getAnswer(String modelServer,String id,String request) {
+		return (ComplianceCheckAnswer)get(modelServer,id,"answer:"+request);
+	}
+
+	public static void putAnswer(String modelServer,String id,String request,ComplianceCheckAnswer answer) {
+		put(modelServer,id,"answer:"+request,answer);
+	}
+
+	public static synchronized void invalidate(String modelServer) {
+		if (modelServer==null) return;
+		String prefix=modelServer+"|";
+		int removed=0;
+		for (Iterator<String> keys=entries.keySet().iterator(); keys.hasNext();) {
+			if (keys.next().startsWith(prefix)) {
+				keys.remove();
+				removed++;
+			}
+		}
+		invalidations++;
+		LOGGER.info("Invalidated "+removed+" cached entries for "+modelServer);
+	}
+
+	// the model has changed if a different set of ids is returned, in which case nothing cached for it can be trusted
+	public static synchronized void recordIdSet(String modelServer,List<String> idSet) {
+		if (modelServer==null) return;
+		List<String> sortedIds=new ArrayList<String>(idSet);
+		Collections.sort(sortedIds);
+		Integer previous=idSets.put(modelServer,sortedIds.hashCode());
+		if (previous!=null && previous!=sortedIds.hashCode()) invalidate(modelServer);
+	}
+
+	public static synchronized String toJSON() {
+		StringBuffer str=new StringBuffer();
+		long requests=hits+misses;
+		str.append("{\"enabled\":").append(isEnabled());
+		str.append(",\"size\":").append(entries.size());
+		str.append(",\"maxSize\":").append(MAX_SIZE);
+		str.append(",\"hits\":").append(hits);
+		str.append(",\"misses\":").append(misses);
+		str.append(",\"hitRate\":").append(requests==0?0:((double)hits)/requests);
+		str.append(",\"evictions\":").append(evictions);
+		str.append(",\"expirations\":").append(expirations);
+		str.append(",\"invalidations\":").append(invalidations);
+		str.append("}");
+		return str.toString();
+	}
+
+	private static class CacheEntry {
+		private final Object value;
+		private final long expires;
+
+		CacheEntry(Object _value,long _expires) {
+			value=_value;
+			expires=_expires;
+		}
+	}
+}
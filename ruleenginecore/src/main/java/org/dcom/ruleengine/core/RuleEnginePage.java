@@ -0,0 +1,80 @@
+/*
+Copyright (C) 2022 Cardiff University
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+*/
+package org.dcom.ruleengine.core;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.function.Function;
+
+/**
+* This class holds one page of a listing (results or entities) of a compliance check. Listings are ordered by key and the cursor of the next page is the (encoded) key of the last item on this page, so pages stay consistent while items are added.
+*
+*/
+public class RuleEnginePage<T> {
+
+	private final List<T> items;
+	private final String nextCursor;
+
+	public RuleEnginePage(List<T> _items,String _nextCursor) {
+		items=_items;
+		nextCursor=_nextCursor;
+	}
+
+	public List<T> getItems() {
+		return items;
+	}
+
+	// null when this is the last page
+	public String getNextCursor() {
+		return nextCursor;
+	}
+
+	public static String encodeCursor(String key) {
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(key.getBytes(StandardCharsets.UTF_8));
+	}
+
+	public static String decodeCursor(String cursor) {
+		if (cursor==null || cursor.equals("")) return null;
+		try {
+			return new String(Base64.getUrlDecoder().decode(cursor),StandardCharsets.UTF_8);
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	// pages through the keys after the cursor, the function returns null for keys that are filtered out, a limit of 0 or less returns every item
+	public static <T> RuleEnginePage<T> of(NavigableSet<String> keys,String cursor,int limit,Function<String,T> item) {
+		String after=decodeCursor(cursor);
+		Iterator<String> it=(after==null?keys:keys.tailSet(after,false)).iterator();
+		List<T> items=new ArrayList<T>();
+		String last=null;
+		while (it.hasNext()) {
+			if (limit > 0 && items.size() >= limit) return new RuleEnginePage<T>(items,encodeCursor(last));
+			String key=it.next();
+			T value=item.apply(key);
+			if (value==null) continue;
+			items.add(value);
+			last=key;
+		}
+		return new RuleEnginePage<T>(items,null);
+	}
+}
@@ -0,0 +1,30 @@
+/*
+Copyright (C) 2022 Cardiff University
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+*/
+package org.dcom.ruleengine.core;
+
+/**
+* This interface is implemented by thread pools whose threads may block on an external answer (a user answer or a long running job), the pool is told while a thread is parked so it can keep the rest of its work going (see RuleEngineScheduler.await).
+*
+*/
+public interface RuleEngineParkable {
+
+	public void park();
+
+	public void unpark();
+
+}
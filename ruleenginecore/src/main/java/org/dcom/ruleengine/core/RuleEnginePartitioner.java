@@ -0,0 +1,147 @@
+/*
+Copyright (C) 2022 Cardiff University
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+*/
+package org.dcom.ruleengine.core;
+
+import org.kie.api.runtime.KieSession;
+import org.kie.api.runtime.rule.AgendaFilter;
+import org.kie.api.runtime.rule.Match;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+* This class evaluates the per entity rules of a large model in parallel. The entities are split into shards by type and then by DCOM_RULEENGINE_PARTITION_SIZE, each shard is evaluated in its own session with the cross entity (transfer) rules filtered out.
+* The executor's own session, which holds every entity, then acts as the merge phase and fires the transfer and summary rules over the already evaluated entities.
+* A check uses at most DCOM_RULEENGINE_PARTITION_LANES threads of the shared pool and its own worker evaluates shards as well, so it always progresses even when the pool is taken up by other checks.
+* The pool is a RuleEngineScheduler of its own, so a shard waiting for a user answer is parked rather than holding one of its DCOM_RULEENGINE_PARTITION_THREADS threads.
+*
+*/
+public class RuleEnginePartitioner {
+
+	private static final int PARTITION_SIZE=RuleEngineConfiguration.getInt(RuleEngineConfiguration.PARTITION_SIZE,0);
+	private static final int THREADS=Math.max(1,RuleEngineConfiguration.getInt(RuleEngineConfiguration.PARTITION_THREADS,Runtime.getRuntime().availableProcessors()));
+	private static final int LANES=Math.max(0,RuleEngineConfiguration.getInt(RuleEngineConfiguration.PARTITION_LANES,Math.max(1,THREADS/2)));
+	private static final String[] SHARD_GROUPS={"sort","compute"};
+
+	private static RuleEngineScheduler executor;
+
+	private static final Logger LOGGER = LoggerFactory.getLogger( RuleEnginePartitioner.class );
+
+	private static synchronized RuleEngineScheduler getExecutor() {
+		if (executor==null) executor=new RuleEngineScheduler("RuleEnginePartitioner",THREADS,Integer.MAX_VALUE,RuleEngineConfiguration.getInt(RuleEngineConfiguration.PARKED_WORKERS,THREADS*4));
+		return executor;
+	}
+
+	public static boolean isPartitioned(int entityCount) {
+		return PARTITION_SIZE > 0 && entityCount > PARTITION_SIZE;
+	}
+
+	public static List<List<RuleEngineComplianceObject>> partition(Collection<RuleEngineComplianceObject> entities) {
+		TreeMap<String,List<RuleEngineComplianceObject>> types=new TreeMap<String,List<RuleEngineComplianceObject>>();
+		for (RuleEngineComplianceObject o: entities) types.computeIfAbsent(o.getTypeString(),type -> new ArrayList<RuleEngineComplianceObject>()).add(o);
+		List<List<RuleEngineComplianceObject>> shards=new ArrayList<List<RuleEngineComplianceObject>>();
+		for (List<RuleEngineComplianceObject> typeEntities: types.values()) {
+			for (int i=0; i < typeEntities.size(); i+=PARTITION_SIZE) shards.add(typeEntities.subList(i,Math.min(i+PARTITION_SIZE,typeEntities.size())));
+		}
+		return shards;
+	}
+
+	public static void evaluate(String ruleName,Collection<RuleEngineComplianceObject> entities) {
+		long startTime=System.nanoTime();
+		List<List<RuleEngineComplianceObject>> shards=partition(entities);
+		LOGGER.info("Evaluating "+entities.size()+" entities in "+shards.size()+" shards:"+ruleName);
+		ConcurrentLinkedQueue<Shard> queue=new ConcurrentLinkedQueue<Shard>();
+		List<CompletableFuture<Void>> runs=new ArrayList<CompletableFuture<Void>>();
+		for (List<RuleEngineComplianceObject> shard: shards) {
+			Shard s=new Shard(shard);
+			queue.add(s);
+			runs.add(s.done);
+		}
+		int lanes=Math.min(LANES,shards.size()-1);
+		try {
+			// lanes of a started evaluation go ahead of those of evaluations still to start
+			for (int i=0; i < lanes; i++) getExecutor().submit(ruleName,RuleEngineScheduler.PRIORITY_HIGH,() -> evaluateShards(ruleName,queue));
+		} catch (RejectedExecutionException e) {
+			LOGGER.error("Could not start shard lane:"+e.getMessage());
+		}
+		evaluateShards(ruleName,queue);
+		// only shards already being evaluated by a lane are left, a lane that starts later finds the queue empty
+		try {
+			RuleEngineScheduler.await(CompletableFuture.allOf(runs.toArray(new CompletableFuture[runs.size()])));
+		} catch (ExecutionException e) {
+			throw new CompletionException(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CompletionException(e);
+		}
+		LOGGER.info("Evaluated shards in "+((System.nanoTime()-startTime)/1000000)+"ms:"+ruleName);
+	}
+
+	private static void evaluateShards(String ruleName,ConcurrentLinkedQueue<Shard> queue) {
+		Shard shard;
+		while ((shard=queue.poll())!=null) {
+			try {
+				evaluateShard(ruleName,shard.entities);
+				shard.done.complete(null);
+			} catch (Throwable e) {
+				// the check's worker is waiting on every shard, so none may be left incomplete
+				shard.done.completeExceptionally(e);
+			}
+		}
+	}
+
+	private static void evaluateShard(String ruleName,List<RuleEngineComplianceObject> shard) {
+		KieSession session=RuleEngineKieRegistry.newKieSession(ruleName);
+		try {
+			if (RuleEngineProfiler.isEnabled()) session.addEventListener(new RuleEngineProfiler.Listener());
+			for (RuleEngineComplianceObject o: shard) session.insert(o);
+			AgendaFilter filter=new EntityRuleFilter();
+			for (String group: SHARD_GROUPS) {
+				session.getAgenda().getAgendaGroup(group).setFocus();
+				session.fireAllRules(filter);
+			}
+		} finally {
+			RuleEngineKieRegistry.releaseKieSession(ruleName,session);
+		}
+	}
+
+	private static class Shard {
+		private final List<RuleEngineComplianceObject> entities;
+		private final CompletableFuture<Void> done;
+
+		Shard(List<RuleEngineComplianceObject> _entities) {
+			entities=_entities;
+			done=new CompletableFuture<Void>();
+		}
+	}
+
+	// transfer rules look across every entity so they are left for the merge phase
+	private static class EntityRuleFilter implements AgendaFilter {
+		public boolean accept(Match match) {
+			return !match.getRule().getName().contains("_TRANSFER");
+		}
+	}
+}
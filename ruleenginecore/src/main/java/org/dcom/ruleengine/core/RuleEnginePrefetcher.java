@@ -0,0 +1,129 @@
+/*
+Copyright (C) 2022 Cardiff University
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+*/
+package org.dcom.ruleengine.core;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+* This class fetches the properties a rule package can request (listed in its dcom-prefetch.txt manifest, written by the RASE compiler) for all entities concurrently before the rules are fired, so that the rules find the answers already cached rather than requesting them one at a time.
+* Prefetching is best effort, the rules are fired after DCOM_RULEENGINE_PREFETCH_TIMEOUT even if some requests are still outstanding and those not yet started are dropped, the rules then request what they still need themselves.
+*
+*/
+public class RuleEnginePrefetcher {
+
+	public static final String MANIFEST="dcom-prefetch.txt";
+	private static final String ANY_TYPE="*";
+
+	private static final boolean ENABLED=RuleEngineConfiguration.getBoolean(RuleEngineConfiguration.PREFETCH,true);
+	private static final long TIMEOUT=RuleEngineConfiguration.getInt(RuleEngineConfiguration.PREFETCH_TIMEOUT,30000);
+
+	private static ExecutorService executor;
+
+	private static final Logger LOGGER = LoggerFactory.getLogger( RuleEnginePrefetcher.class );
+
+	private static synchronized ExecutorService getExecutor() {
+		if (executor==null) executor=Executors.newFixedThreadPool(RuleEngineConfiguration.getInt(RuleEngineConfiguration.PREFETCH_THREADS,16));
+		return executor;
+	}
+
+	public static List<PrefetchItem> readManifest(InputStream in) {
+		List<PrefetchItem> items=new ArrayList<PrefetchItem>();
+		if (in==null) return items;
+		HashSet<String> seen=new HashSet<String>();
+		try (BufferedReader reader=new BufferedReader(new InputStreamReader(in,StandardCharsets.UTF_8))) {
+			String line;
+			while ((line=reader.readLine())!=null) {
+				String[] data=line.split("\t",-1);
+				if (data.length < 6) continue;
+				// only one request is needed for each property and target of an entity type
+				if (!seen.add(data[0]+"\t"+data[1]+"\t"+data[3])) continue;
+				items.add(new PrefetchItem(data[0],data[1],data[2],data[3],data[4],data[5]));
+			}
+		} catch (Exception e) {
+			LOGGER.error("Could not read prefetch manifest:"+e.getMessage());
+		}
+		return items;
+	}
+
+	public static void prefetch(String ruleName,Collection<RuleEngineComplianceObject> entities) {
+		if (!ENABLED) return;
+		List<PrefetchItem> items=RuleEngineKieRegistry.getPrefetchItems(ruleName);
+		if (items.size()==0) return;
+		long startTime=System.nanoTime();
+		List<CompletableFuture<Void>> requests=new ArrayList<CompletableFuture<Void>>();
+		for (RuleEngineComplianceObject o: entities) {
+			for (PrefetchItem item: items) {
+				if (!item.appliesTo(o)) continue;
+				requests.add(CompletableFuture.runAsync(() -> o.prefetch(item.property,item.comparator,item.target,item.unit,item.rule),getExecutor()));
+			}
+		}
+		try {
+			CompletableFuture.allOf(requests.toArray(new CompletableFuture[requests.size()])).get(TIMEOUT,TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			int outstanding=0;
+			for (CompletableFuture<Void> request: requests) {
+				if (!request.isDone()) outstanding++;
+				// requests still queued are not run once cancelled
+				request.cancel(false);
+			}
+			LOGGER.info("Prefetch deadline reached with "+outstanding+" of "+requests.size()+" properties outstanding:"+ruleName);
+			return;
+		} catch (Exception e) {
+			LOGGER.error("Prefetch failed:"+ruleName+":"+e.getMessage());
+			return;
+		}
+		LOGGER.info("Prefetched "+requests.size()+" properties for "+entities.size()+" entities in "+((System.nanoTime()-startTime)/1000000)+"ms:"+ruleName);
+	}
+
+	public static class PrefetchItem {
+
+		private final String type;
+		private final String property;
+		private final String comparator;
+		private final String target;
+		private final String unit;
+		private final String rule;
+
+		PrefetchItem(String _type,String _property,String _comparator,String _target,String _unit,String _rule) {
+			type=_type;
+			property=_property;
+			comparator=_comparator;
+			target=_target;
+			unit=_unit;
+			rule=_rule;
+		}
+
+		boolean appliesTo(RuleEngineComplianceObject o) {
+			return type.equals(ANY_TYPE) || o.getType().contains(type);
+		}
+	}
+}
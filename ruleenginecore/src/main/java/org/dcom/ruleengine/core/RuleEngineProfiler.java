@@ -0,0 +1,158 @@
+/*
+Copyright (C) 2022 Cardiff University
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+*/
+package org.dcom.ruleengine.core;
+
+import org.kie.api.event.rule.DefaultAgendaEventListener;
+import org.kie.api.event.rule.MatchCreatedEvent;
+import org.kie.api.event.rule.MatchCancelledEvent;
+import org.kie.api.event.rule.BeforeMatchFiredEvent;
+import org.kie.api.event.rule.AfterMatchFiredEvent;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.io.PrintWriter;
+import java.io.FileWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+* This class collects per rule statistics (matches, cancellations, firings and time spent in the rule consequence) and the time spent in each agenda group, so that slow RASE boxes can be identified.
+* It is enabled by setting DCOM_RULEENGINE_PROFILE to the file the statistics are written to every DCOM_RULEENGINE_PROFILE_INTERVAL milliseconds and when the service shuts down.
+*
+*/
+public class RuleEngineProfiler {
+
+	private static final String dumpFile=RuleEngineConfiguration.getString(RuleEngineConfiguration.PROFILE,null);
+	private static final ConcurrentHashMap<String,RuleStatistics> ruleStatistics=new ConcurrentHashMap<String,RuleStatistics>();
+	private static final ConcurrentHashMap<String,RuleStatistics> agendaGroupStatistics=new ConcurrentHashMap<String,RuleStatistics>();
+
+	private static final Logger LOGGER = LoggerFactory.getLogger( RuleEngineProfiler.class );
+
+	static {
+		if (dumpFile!=null) {
+			long interval=Math.max(1000,RuleEngineConfiguration.getInt(RuleEngineConfiguration.PROFILE_INTERVAL,60000));
+			ScheduledExecutorService timer=Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread=new Thread(runnable,"RuleEngineProfiler");
+				thread.setDaemon(true);
+				return thread;
+			});
+			timer.scheduleWithFixedDelay(RuleEngineProfiler::dump,interval,interval,TimeUnit.MILLISECONDS);
+			Runtime.getRuntime().addShutdownHook(new Thread(RuleEngineProfiler::dump,"RuleEngineProfilerShutdown"));
+		}
+	}
+
+	public static boolean isEnabled() {
+		return dumpFile!=null;
+	}
+
+	private static RuleStatistics getRule(String ruleName) {
+		return ruleStatistics.computeIfAbsent(ruleName,name -> new RuleStatistics());
+	}
+
+	public static void recordAgendaGroup(String group,long time) {
+		RuleStatistics statistics=agendaGroupStatistics.computeIfAbsent(group,name -> new RuleStatistics());
+		statistics.fired.increment();
+		statistics.time.add(time);
+	}
+
+	public static void reset() {
+		ruleStatistics.clear();
+		agendaGroupStatistics.clear();
+	}
+
+	public static synchronized void dump() {
+		if (dumpFile==null) return;
+		try (PrintWriter out=new PrintWriter(new FileWriter(dumpFile))) {
+			out.println("rule,matches,cancelled,fired,rhsMs");
+			for (Map.Entry<String,RuleStatistics> entry: new TreeMap<String,RuleStatistics>(ruleStatistics).entrySet()) {
+				RuleStatistics statistics=entry.getValue();
+				out.println("\""+entry.getKey()+"\","+statistics.matches.sum()+","+statistics.cancelled.sum()+","+statistics.fired.sum()+","+(statistics.time.sum()/1000000.0));
+			}
+			out.println();
+			out.println("agendaGroup,runs,ms");
+			for (Map.Entry<String,RuleStatistics> entry: new TreeMap<String,RuleStatistics>(agendaGroupStatistics).entrySet()) {
+				out.println(entry.getKey()+","+entry.getValue().fired.sum()+","+(entry.getValue().time.sum()/1000000.0));
+			}
+		} catch (Exception e) {
+			LOGGER.error("Could not write rule profile to "+dumpFile);
+			e.printStackTrace();
+		}
+	}
+
+	public static String toJSON() {
+		StringBuffer str=new StringBuffer();
+		str.append("{\"enabled\":").append(isEnabled()).append(",\"rules\":[");
+		boolean first=true;
+		for (Map.Entry<String,RuleStatistics> entry: new TreeMap<String,RuleStatistics>(ruleStatistics).entrySet()) {
+			if (first) first=false; else str.append(",");
+			RuleStatistics statistics=entry.getValue();
+			str.append("{\"rule\":\"").append(entry.getKey().replace("\"","\\\"")).append("\"");
+			str.append(",\"matches\":").append(statistics.matches.sum());
+			str.append(",\"cancelled\":").append(statistics.cancelled.sum());
+			str.append(",\"fired\":").append(statistics.fired.sum());
+			str.append(",\"rhsMs\":").append(statistics.time.sum()/1000000.0).append("}");
+		}
+		str.append("],\"agendaGroups\":[");
+		first=true;
+		for (Map.Entry<String,RuleStatistics> entry: new TreeMap<String,RuleStatistics>(agendaGroupStatistics).entrySet()) {
+			if (first) first=false; else str.append(",");
+			str.append("{\"agendaGroup\":\"").append(entry.getKey()).append("\"");
+			str.append(",\"runs\":").append(entry.getValue().fired.sum());
+			str.append(",\"ms\":").append(entry.getValue().time.sum()/1000000.0).append("}");
+		}
+		str.append("]}");
+		return str.toString();
+	}
+
+	private static class RuleStatistics {
+		private final LongAdder matches=new LongAdder();
+		private final LongAdder cancelled=new LongAdder();
+		private final LongAdder fired=new LongAdder();
+		private final LongAdder time=new LongAdder();
+	}
+
+	/**
+	* The agenda listener added to each session while profiling, a session only fires on one thread at a time so a single start time is enough.
+	*/
+	public static class Listener extends DefaultAgendaEventListener {
+
+		private long fireStart;
+
+		public void matchCreated(MatchCreatedEvent event) {
+			getRule(event.getMatch().getRule().getName()).matches.increment();
+		}
+
+		public void matchCancelled(MatchCancelledEvent event) {
+			getRule(event.getMatch().getRule().getName()).cancelled.increment();
+		}
+
+		public void beforeMatchFired(BeforeMatchFiredEvent event) {
+			fireStart=System.nanoTime();
+		}
+
+		public void afterMatchFired(AfterMatchFiredEvent event) {
+			RuleStatistics statistics=getRule(event.getMatch().getRule().getName());
+			statistics.fired.increment();
+			statistics.time.add(System.nanoTime()-fireStart);
+		}
+	}
+}
@@ -0,0 +1,176 @@
+/*
+Copyright (C) 2022 Cardiff University
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+*/
+package org.dcom.ruleengine.core;
+
+import org.dcom.core.services.ComplianceCheckAnswer;
+import org.dcom.core.services.DataSourceService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+* This class groups the property requests made to each data source implementing RuleEngineBulkDataSource within a short window (DCOM_RULEENGINE_REQUEST_WINDOW) into batches, each batch is sent in a single call.
+* All other data sources are called straight away so that they see no added latency. For every data source identical requests from different rules are only made once while one is in flight.
+*
+*/
+public class RuleEngineRequestBatcher {
+
+	private static final int WINDOW=RuleEngineConfiguration.getInt(RuleEngineConfiguration.REQUEST_WINDOW,10);
+	private static final int MAX_BATCH_SIZE=RuleEngineConfiguration.getInt(RuleEngineConfiguration.REQUEST_BATCH_SIZE,100);
+
+	private static final HashMap<DataSourceService,LinkedHashMap<String,PendingRequest>> pending=new HashMap<DataSourceService,LinkedHashMap<String,PendingRequest>>();
+	private static final ConcurrentHashMap<DataSourceService,ConcurrentHashMap<String,CompletableFuture<ComplianceCheckAnswer>>> inFlight=new ConcurrentHashMap<DataSourceService,ConcurrentHashMap<String,CompletableFuture<ComplianceCheckAnswer>>>();
+	private static ScheduledExecutorService executor;
+
+	private static final AtomicLong requests=new AtomicLong();
+	private static final AtomicLong deduplicated=new AtomicLong();
+	private static final AtomicLong batches=new AtomicLong();
+	private static final AtomicLong batchedRequests=new AtomicLong();
+	private static final AtomicLong bulkCalls=new AtomicLong();
+	private static final AtomicLong singleCalls=new AtomicLong();
+	private static final AtomicLong maxBatch=new AtomicLong();
+
+	private static final Logger LOGGER = LoggerFactory.getLogger( RuleEngineRequestBatcher.class );
+
+	private static synchronized ScheduledExecutorService getExecutor() {
+		if (executor==null) {
+			AtomicInteger count=new AtomicInteger();
+			executor=Executors.newScheduledThreadPool(RuleEngineConfiguration.getInt(RuleEngineConfiguration.REQUEST_THREADS,4),runnable -> {
+				Thread thread=new Thread(runnable,"RuleEngineRequestBatcher-"+count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		return executor;
+	}
+
+	public static CompletableFuture<ComplianceCheckAnswer> getAnswer(DataSourceService dataSource,String id,String variable,String comparator,String target,String unit,String rule) {
+		requests.incrementAndGet();
+		RuleEngineDataRequest request=new RuleEngineDataRequest(id,variable,comparator,target,unit,rule);
+		if (WINDOW <= 0 || !(dataSource instanceof RuleEngineBulkDataSource)) return fetchOnce(dataSource,request);
+		LinkedHashMap<String,PendingRequest> batch=null;
+		PendingRequest pendingRequest;
+		synchronized (pending) {
+			LinkedHashMap<String,PendingRequest> current=pending.get(dataSource);
+			if (current==null) {
+				current=new LinkedHashMap<String,PendingRequest>();
+				pending.put(dataSource,current);
+				final LinkedHashMap<String,PendingRequest> scheduled=current;
+				getExecutor().schedule(() -> flush(dataSource,scheduled),WINDOW,TimeUnit.MILLISECONDS);
+			}
+			pendingRequest=current.get(request.getKey());
+			if (pendingRequest!=null) {
+				deduplicated.incrementAndGet();
+				return pendingRequest.answer;
+			}
+			pendingRequest=new PendingRequest(request);
+			current.put(request.getKey(),pendingRequest);
+			if (current.size() >= MAX_BATCH_SIZE) batch=current;
+		}
+		if (batch!=null) {
+			final LinkedHashMap<String,PendingRequest> full=batch;
+			getExecutor().execute(() -> flush(dataSource,full));
+		}
+		return pendingRequest.answer;
+	}
+
+	private static void flush(DataSourceService dataSource,LinkedHashMap<String,PendingRequest> batch) {
+		List<PendingRequest> batchRequests;
+		synchronized (pending) {
+			// the batch may already have been sent because it filled up before the window ended
+			if (pending.get(dataSource)!=batch) return;
+			pending.remove(dataSource);
+			batchRequests=new ArrayList<PendingRequest>(batch.values());
+		}
+		batches.incrementAndGet();
+		batchedRequests.addAndGet(batchRequests.size());
+		maxBatch.accumulateAndGet(batchRequests.size(),Math::max);
+		bulkCalls.incrementAndGet();
+		List<RuleEngineDataRequest> dataRequests=new ArrayList<RuleEngineDataRequest>();
+		for (PendingRequest r: batchRequests) dataRequests.add(r.request);
+		// the batch is queued on the data source's concurrency limit and completes on its own, the flush thread never waits for an answer
+		RuleEngineConcurrencyLimiter.callAsync(dataSource,() -> ((RuleEngineBulkDataSource)dataSource).getAnswers(dataRequests)).whenComplete((answers,error) -> {
+			if (error!=null) {
+				LOGGER.error("Bulk request of "+batchRequests.size()+" properties failed:"+error.getMessage());
+				for (PendingRequest r: batchRequests) r.answer.completeExceptionally(error);
+				return;
+			}
+			for (int i=0; i < batchRequests.size(); i++) {
+				if (i < answers.size()) batchRequests.get(i).answer.complete(answers.get(i));
+				else batchRequests.get(i).answer.completeExceptionally(new IllegalStateException("No answer returned for "+batchRequests.get(i).request.getKey()));
+			}
+		});
+	}
+
+	// a data source that cannot batch is called straight away, a request identical to one in flight shares its answer
+	private static CompletableFuture<ComplianceCheckAnswer> fetchOnce(DataSourceService dataSource,RuleEngineDataRequest request) {
+		ConcurrentHashMap<String,CompletableFuture<ComplianceCheckAnswer>> sourceRequests=inFlight.computeIfAbsent(dataSource,k -> new ConcurrentHashMap<String,CompletableFuture<ComplianceCheckAnswer>>());
+		CompletableFuture<ComplianceCheckAnswer> answer=new CompletableFuture<ComplianceCheckAnswer>();
+		CompletableFuture<ComplianceCheckAnswer> existing=sourceRequests.putIfAbsent(request.getKey(),answer);
+		if (existing!=null) {
+			deduplicated.incrementAndGet();
+			return existing;
+		}
+		singleCalls.incrementAndGet();
+		fetch(dataSource,request).whenComplete((result,error) -> {
+			sourceRequests.remove(request.getKey(),answer);
+			if (error!=null) answer.completeExceptionally(error);
+			else answer.complete(result);
+		});
+		return answer;
+	}
+
+	private static CompletableFuture<ComplianceCheckAnswer> fetch(DataSourceService dataSource,RuleEngineDataRequest request) {
+		return RuleEngineConcurrencyLimiter.callAsync(dataSource,() -> dataSource.getAnswer(request.getId(),request.getVariable(),request.getComparator(),request.getTarget(),request.getUnit(),request.getRule())).thenApply(answers -> answers.get(0));
+	}
+
+	public static String toJSON() {
+		StringBuffer str=new StringBuffer();
+		long batchCount=batches.get();
+		str.append("{\"window\":").append(WINDOW);
+		str.append(",\"requests\":").append(requests.get());
+		str.append(",\"deduplicated\":").append(deduplicated.get());
+		str.append(",\"batches\":").append(batchCount);
+		str.append(",\"averageBatchSize\":").append(batchCount==0?0:((double)batchedRequests.get())/batchCount);
+		str.append(",\"maxBatchSize\":").append(maxBatch.get());
+		str.append(",\"bulkCalls\":").append(bulkCalls.get());
+		str.append(",\"singleCalls\":").append(singleCalls.get());
+		str.append("}");
+		return str.toString();
+	}
+
+	private static class PendingRequest {
+		private final RuleEngineDataRequest request;
+		private final CompletableFuture<ComplianceCheckAnswer> answer;
+
+		PendingRequest(RuleEngineDataRequest _request) {
+			request=_request;
+			answer=new CompletableFuture<ComplianceCheckAnswer>();
+		}
+	}
+}
@@ -0,0 +1,162 @@
+/*
+Copyright (C) 2022 Cardiff University
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+*/
+package org.dcom.ruleengine.core;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+* This class indexes the results of a compliance check by clause id, result time, result status, the types of the entities the clause used and the words of the reasons, so that filtered result listings only visit the matching clauses.
+*
+*/
+public class RuleEngineResultIndex {
+
+	private final TreeSet<String> clauses=new TreeSet<String>();
+	private final HashMap<String,String> statuses=new HashMap<String,String>();
+	private final HashMap<String,Set<String>> statusIndex=new HashMap<String,Set<String>>();
+	private final HashMap<String,LocalDateTime> times=new HashMap<String,LocalDateTime>();
+	private final TreeMap<LocalDateTime,Set<String>> timeIndex=new TreeMap<LocalDateTime,Set<String>>();
+	private final HashMap<String,Set<String>> typeIndex=new HashMap<String,Set<String>>();
+	private final HashMap<String,Set<String>> clauseTokens=new HashMap<String,Set<String>>();
+	private final TreeMap<String,Set<String>> tokenIndex=new TreeMap<String,Set<String>>();
+
+	public synchronized void setResult(String clause,String status) {
+		clauses.add(clause);
+		String previous=statuses.put(clause,status.toUpperCase());
+		if (previous!=null) remove(statusIndex,previous,clause);
+		add(statusIndex,status.toUpperCase(),clause);
+	}
+
+	public synchronized void setTime(String clause,LocalDateTime time) {
+		LocalDateTime previous=times.put(clause,time);
+		if (previous!=null) remove(timeIndex,previous,clause);
+		add(timeIndex,time,clause);
+	}
+
+	public synchronized void addType(String clause,String type) {
+		add(typeIndex,type,clause);
+	}
+
+	public synchronized void setReasons(String clause,List<String> reasons) {
+		Set<String> previous=clauseTokens.remove(clause);
+		if (previous!=null) {
+			for (String token: previous) remove(tokenIndex,token,clause);
+		}
+		Set<String> tokens=new HashSet<String>();
+		for (String reason: reasons) {
+			if (reason!=null) tokens.addAll(tokenise(reason));
+		}
+		for (String token: tokens) add(tokenIndex,token,clause);
+		clauseTokens.put(clause,tokens);
+	}
+
+	public synchronized boolean hasReasons(String clause) {
+		return clauseTokens.containsKey(clause);
+	}
+
+	// the clauses matching every filter given, null filters are not applied and each word of the free text has to start a word of a reason
+	public synchronized NavigableSet<String> query(LocalDateTime start,LocalDateTime end,Set<String> statusFilter,String prefix,Set<String> typeFilter,String freeText) {
+		TreeSet<String> matches;
+		if (prefix!=null && !prefix.equals("")) matches=new TreeSet<String>(clauses.subSet(prefix,true,prefix+Character.MAX_VALUE,false));
+		else matches=new TreeSet<String>(clauses);
+		if (start!=null || end!=null) {
+			Map<LocalDateTime,Set<String>> range=timeIndex;
+			if (start!=null && end!=null) range=timeIndex.subMap(start,true,end,true);
+			else if (start!=null) range=timeIndex.tailMap(start,true);
+			else range=timeIndex.headMap(end,true);
+			matches.retainAll(union(range.values()));
+		}
+		if (statusFilter!=null) {
+			Set<String> selected=new HashSet<String>();
+			for (String status: statusFilter) {
+				Set<String> statusClauses=statusIndex.get(status.toUpperCase());
+				if (statusClauses!=null) selected.addAll(statusClauses);
+			}
+			matches.retainAll(selected);
+		}
+		if (typeFilter!=null) {
+			Set<String> selected=new HashSet<String>();
+			for (String type: typeFilter) {
+				Set<String> typeClauses=typeIndex.get(type.toLowerCase());
+				if (typeClauses!=null) selected.addAll(typeClauses);
+			}
+			matches.retainAll(selected);
+		}
+		if (freeText!=null) {
+			for (String token: tokenise(freeText)) {
+				matches.retainAll(union(tokenIndex.subMap(token,true,token+Character.MAX_VALUE,false).values()));
+			}
+		}
+		return matches;
+	}
+
+	// the free text predicate used by query, for checking a single clause's reasons
+	public static boolean matches(Collection<String> reasons,String freeText) {
+		Set<String> tokens=new HashSet<String>();
+		if (reasons!=null) {
+			for (String reason: reasons) {
+				if (reason!=null) tokens.addAll(tokenise(reason));
+			}
+		}
+		for (String word: tokenise(freeText)) {
+			boolean found=false;
+			for (String token: tokens) {
+				if (token.startsWith(word)) {
+					found=true;
+					break;
+				}
+			}
+			if (!found) return false;
+		}
+		return true;
+	}
+
+	private static Set<String> tokenise(String text) {
+		Set<String> tokens=new HashSet<String>();
+		for (String token: text.toLowerCase().split("[^\\p{Alnum}]+")) {
+			if (!token.equals("")) tokens.add(token);
+		}
+		return tokens;
+	}
+
+	private static Set<String> union(Collection<Set<String>> sets) {
+		Set<String> all=new HashSet<String>();
+		for (Set<String> set: sets) all.addAll(set);
+		return all;
+	}
+
+	private static <K> void add(Map<K,Set<String>> index,K key,String clause) {
+		if (!index.containsKey(key)) index.put(key,new HashSet<String>());
+		index.get(key).add(clause);
+	}
+
+	private static <K> void remove(Map<K,Set<String>> index,K key,String clause) {
+		Set<String> indexed=index.get(key);
+		if (indexed==null) return;
+		indexed.remove(clause);
+		if (indexed.size()==0) index.remove(key);
+	}
+}
@@ -0,0 +1,302 @@
+/*
+Copyright (C) 2022 Cardiff University
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+*/
+package org.dcom.ruleengine.core;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+* This class runs rule engine executors on a fixed pool of worker threads. Runs are queued per compliance check, higher priority runs go first and checks of equal priority are served round robin so one large check cannot starve the others.
+* A run waiting for a user answer or a long running job is parked (see await), it keeps its thread but no longer counts towards DCOM_RULEENGINE_WORKERS so another worker is started in its place and idle workers over the limit retire once the run resumes.
+* At most DCOM_RULEENGINE_PARKED_WORKERS such extra workers are started, so many runs waiting for answers cannot grow the pool without bound.
+*
+*/
+public class RuleEngineScheduler implements RuleEngineParkable {
+
+	private static final ThreadLocal<RuleEngineParkable> PARKABLE=new ThreadLocal<RuleEngineParkable>();
+
+	public static final int PRIORITY_NORMAL=0;
+	public static final int PRIORITY_HIGH=1;
+
+	private static RuleEngineScheduler instance;
+
+	private final String name;
+	private final int capacity;
+	private final HashMap<String,PriorityQueue<ScheduledRun>> runQueues;
+	private final ArrayDeque<String> checkOrder;
+	private final int noWorkers;
+	private final int maxExtraWorkers;
+	private int threads;
+	private int parked;
+	private int threadCount;
+	private int queued;
+	private int active;
+	private long sequence;
+
+	private long submitted;
+	private long started;
+	private long completed;
+	private long rejected;
+	private long totalWaitTime;
+	private long maxWaitTime;
+	private int maxQueueDepth;
+	private int maxParked;
+
+	private static final Logger LOGGER = LoggerFactory.getLogger( RuleEngineScheduler.class );
+
+	public static synchronized RuleEngineScheduler getInstance() {
+		if (instance==null) {
+			int noWorkers=RuleEngineConfiguration.getInt(RuleEngineConfiguration.WORKERS,Runtime.getRuntime().availableProcessors()*2);
+			int queueSize=RuleEngineConfiguration.getInt(RuleEngineConfiguration.QUEUE_SIZE,1000);
+			int maxExtraWorkers=RuleEngineConfiguration.getInt(RuleEngineConfiguration.PARKED_WORKERS,noWorkers*4);
+			instance=new RuleEngineScheduler(noWorkers,queueSize,maxExtraWorkers);
+		}
+		return instance;
+	}
+
+	public RuleEngineScheduler(int _noWorkers,int _capacity) {
+		this(_noWorkers,_capacity,_noWorkers*4);
+	}
+
+	public RuleEngineScheduler(int _noWorkers,int _capacity,int _maxExtraWorkers) {
+		this("RuleEngineWorker",_noWorkers,_capacity,_maxExtraWorkers);
+	}
+
+	public RuleEngineScheduler(String _name,int _noWorkers,int _capacity,int _maxExtraWorkers) {
+		name=_name;
+		capacity=_capacity;
+		runQueues=new HashMap<String,PriorityQueue<ScheduledRun>>();
+		checkOrder=new ArrayDeque<String>();
+		noWorkers=_noWorkers;
+		maxExtraWorkers=_maxExtraWorkers;
+		LOGGER.info("Starting "+name+" Scheduler with "+noWorkers+" workers (up to "+maxExtraWorkers+" more for parked runs) and a queue of "+capacity);
+		synchronized (this) {
+			for (int i=0; i < noWorkers;i++) startWorker();
+		}
+	}
+
+	// marks the calling thread as belonging to a pool that can compensate for it while it waits
+	public static void setParkable(RuleEngineParkable pool) {
+		PARKABLE.set(pool);
+	}
+
+	// waits for an external answer, a pool thread is parked for the duration so the pool can keep its other work going
+	public static <T> T await(Future<T> future) throws InterruptedException, ExecutionException {
+		RuleEngineParkable pool=PARKABLE.get();
+		if (pool==null || future.isDone()) return future.get();
+		pool.park();
+		try {
+			return future.get();
+		} finally {
+			pool.unpark();
+		}
+	}
+
+	// as await, giving up after timeout milliseconds
+	public static <T> T await(Future<T> future,long timeout) throws InterruptedException, ExecutionException, TimeoutException {
+		RuleEngineParkable pool=PARKABLE.get();
+		if (pool==null || future.isDone()) return future.get(timeout,TimeUnit.MILLISECONDS);
+		pool.park();
+		try {
+			return future.get(timeout,TimeUnit.MILLISECONDS);
+		} finally {
+			pool.unpark();
+		}
+	}
+
+	private void startWorker() {
+		Thread worker=new Thread(this::work,name+"-"+(threadCount++));
+		worker.setDaemon(true);
+		threads++;
+		worker.start();
+	}
+
+	public synchronized void park() {
+		parked++;
+		if (parked > maxParked) maxParked=parked;
+		// past the limit the parked run simply keeps its thread and the pool runs with fewer active workers
+		if (threads-parked < noWorkers && threads < noWorkers+maxExtraWorkers) startWorker();
+	}
+
+	public synchronized void unpark() {
+		parked--;
+		// an idle worker over the limit retires
+		notifyAll();
+	}
+
+	public synchronized void submit(String checkId,int priority,Runnable run) {
+		if (queued>=capacity) {
+			rejected++;
+			throw new RejectedExecutionException("Rule engine queue is full ("+capacity+")");
+		}
+		PriorityQueue<ScheduledRun> runQueue=runQueues.get(checkId);
+		if (runQueue==null) {
+			runQueue=new PriorityQueue<ScheduledRun>();
+			runQueues.put(checkId,runQueue);
+			checkOrder.addLast(checkId);
+		}
+		runQueue.add(new ScheduledRun(checkId,priority,sequence++,run));
+		queued++;
+		submitted++;
+		if (queued > maxQueueDepth) maxQueueDepth=queued;
+		notify();
+	}
+
+	public synchronized int cancel(String checkId) {
+		PriorityQueue<ScheduledRun> runQueue=runQueues.remove(checkId);
+		if (runQueue==null) return 0;
+		checkOrder.remove(checkId);
+		queued-=runQueue.size();
+		return runQueue.size();
+	}
+
+	private synchronized ScheduledRun take() throws InterruptedException {
+		while (queued==0 || threads-parked > noWorkers) {
+			if (threads-parked > noWorkers) {
+				threads--;
+				return null;
+			}
+			wait();
+		}
+		// find the highest priority at the head of any check queue, earliest check in the rotation wins ties
+		String selectedCheck=null;
+		int selectedPriority=Integer.MIN_VALUE;
+		for (String checkId: checkOrder) {
+			int priority=runQueues.get(checkId).peek().priority;
+			if (priority > selectedPriority) {
+				selectedPriority=priority;
+				selectedCheck=checkId;
+			}
+		}
+		checkOrder.remove(selectedCheck);
+		PriorityQueue<ScheduledRun> runQueue=runQueues.get(selectedCheck);
+		ScheduledRun run=runQueue.poll();
+		if (runQueue.isEmpty()) runQueues.remove(selectedCheck);
+		else checkOrder.addLast(selectedCheck);
+		queued--;
+		active++;
+		started++;
+		long waitTime=System.nanoTime()-run.enqueueTime;
+		totalWaitTime+=waitTime;
+		if (waitTime > maxWaitTime) maxWaitTime=waitTime;
+		return run;
+	}
+
+	private synchronized void finished() {
+		active--;
+		completed++;
+	}
+
+	private synchronized void workerLost() {
+		threads--;
+		notifyAll();
+	}
+
+	private void work() {
+		setParkable(this);
+		boolean retired=false;
+		try {
+			while (true) {
+				ScheduledRun run=take();
+				if (run==null) {
+					// take has already taken this worker off the thread count
+					retired=true;
+					return;
+				}
+				try {
+					run.run.run();
+				} catch (Throwable e) {
+					LOGGER.error("Rule engine run failed for check "+run.checkId,e);
+				} finally {
+					finished();
+				}
+			}
+		} catch (InterruptedException e) {
+			LOGGER.error("Rule engine worker interrupted");
+		} finally {
+			if (!retired) workerLost();
+		}
+	}
+
+	public synchronized int getQueueDepth() {
+		return queued;
+	}
+
+	public synchronized int getActiveRuns() {
+		return active;
+	}
+
+	public synchronized int getThreads() {
+		return threads;
+	}
+
+	public synchronized int getParkedRuns() {
+		return parked;
+	}
+
+	public synchronized String toJSON() {
+		StringBuffer str=new StringBuffer();
+		str.append("{\"workers\":").append(noWorkers);
+		str.append(",\"maxExtraWorkers\":").append(maxExtraWorkers);
+		str.append(",\"threads\":").append(threads);
+		str.append(",\"parkedRuns\":").append(parked);
+		str.append(",\"maxParkedRuns\":").append(maxParked);
+		str.append(",\"capacity\":").append(capacity);
+		str.append(",\"queueDepth\":").append(queued);
+		str.append(",\"maxQueueDepth\":").append(maxQueueDepth);
+		str.append(",\"activeRuns\":").append(active);
+		str.append(",\"queuedChecks\":").append(checkOrder.size());
+		str.append(",\"submitted\":").append(submitted);
+		str.append(",\"completed\":").append(completed);
+		str.append(",\"rejected\":").append(rejected);
+		str.append(",\"averageWaitMs\":").append(started==0?0:(totalWaitTime/started)/1000000);
+		str.append(",\"maxWaitMs\":").append(maxWaitTime/1000000);
+		str.append("}");
+		return str.toString();
+	}
+
+	private static class ScheduledRun implements Comparable<ScheduledRun> {
+
+		private final String checkId;
+		private final int priority;
+		private final long sequence;
+		private final long enqueueTime;
+		private final Runnable run;
+
+		ScheduledRun(String _checkId,int _priority,long _sequence,Runnable _run) {
+			checkId=_checkId;
+			priority=_priority;
+			sequence=_sequence;
+			run=_run;
+			enqueueTime=System.nanoTime();
+		}
+
+		public int compareTo(ScheduledRun other) {
+			if (priority!=other.priority) return other.priority-priority;
+			return Long.compare(sequence,other.sequence);
+		}
+	}
+}
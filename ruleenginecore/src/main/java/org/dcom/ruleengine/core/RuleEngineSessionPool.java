@@ -0,0 +1,126 @@
+/*
+Copyright (C) 2022 Cardiff University
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+*/
+package org.dcom.ruleengine.core;
+
+import org.kie.api.KieBase;
+import org.kie.api.runtime.KieSession;
+import org.kie.api.event.rule.AgendaEventListener;
+import org.kie.api.event.rule.RuleRuntimeEventListener;
+import org.drools.core.impl.StatefulKnowledgeSessionImpl;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+* This class keeps a bounded pool of idle sessions for one KieBase. Released sessions are reset (working memory, agenda and listeners cleared) and handed out again instead of allocating a new session for each run.
+*
+*/
+public class RuleEngineSessionPool {
+
+	private final KieBase kieBase;
+	private final int maxSize;
+	private final ConcurrentLinkedDeque<KieSession> idleSessions;
+	private final AtomicInteger idleCount;
+	private final AtomicLong created;
+	private final AtomicLong reused;
+	private final AtomicLong returned;
+	private final AtomicLong discarded;
+
+	private static final Logger LOGGER = LoggerFactory.getLogger( RuleEngineSessionPool.class );
+
+	public RuleEngineSessionPool(KieBase _kieBase,int _maxSize) {
+		kieBase=_kieBase;
+		maxSize=_maxSize;
+		idleSessions=new ConcurrentLinkedDeque<KieSession>();
+		idleCount=new AtomicInteger();
+		created=new AtomicLong();
+		reused=new AtomicLong();
+		returned=new AtomicLong();
+		discarded=new AtomicLong();
+	}
+
+	public KieSession borrow() {
+		KieSession session=idleSessions.pollFirst();
+		if (session!=null) {
+			idleCount.decrementAndGet();
+			reused.incrementAndGet();
+			return session;
+		}
+		created.incrementAndGet();
+		return kieBase.newKieSession();
+	}
+
+	public void release(KieSession session) {
+		if (!reset(session)) {
+			discard(session);
+			return;
+		}
+		if (idleCount.incrementAndGet() > maxSize) {
+			idleCount.decrementAndGet();
+			discard(session);
+			return;
+		}
+		idleSessions.offerFirst(session);
+		returned.incrementAndGet();
+	}
+
+	private void discard(KieSession session) {
+		discarded.incrementAndGet();
+		try {
+			session.dispose();
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+
+	private boolean reset(KieSession session) {
+		if (maxSize <= 0 || !(session instanceof StatefulKnowledgeSessionImpl)) return false;
+		try {
+			for (RuleRuntimeEventListener listener: new ArrayList<RuleRuntimeEventListener>(session.getRuleRuntimeEventListeners())) session.removeEventListener(listener);
+			for (AgendaEventListener listener: new ArrayList<AgendaEventListener>(session.getAgendaEventListeners())) session.removeEventListener(listener);
+			((StatefulKnowledgeSessionImpl)session).reset();
+			return true;
+		} catch (Exception e) {
+			LOGGER.error("Could not reset session for reuse:"+e.getMessage());
+			return false;
+		}
+	}
+
+	public void clear() {
+		KieSession session;
+		while ((session=idleSessions.pollFirst())!=null) {
+			idleCount.decrementAndGet();
+			discard(session);
+		}
+	}
+
+	public String toJSON() {
+		StringBuffer str=new StringBuffer();
+		str.append("{\"maxSize\":").append(maxSize);
+		str.append(",\"idle\":").append(idleCount.get());
+		str.append(",\"created\":").append(created.get());
+		str.append(",\"reused\":").append(reused.get());
+		str.append(",\"returned\":").append(returned.get());
+		str.append(",\"discarded\":").append(discarded.get());
+		str.append("}");
+		return str.toString();
+	}
+}
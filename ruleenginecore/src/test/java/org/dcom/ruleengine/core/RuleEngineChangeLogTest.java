@@ -0,0 +1,94 @@
+/*
+Copyright (C) 2022 Cardiff University
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+*/
+package org.dcom.ruleengine.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.List;
+import org.junit.Test;
+
+/**
+* This class tests the sequence tokens and the result and entity rings of RuleEngineChangeLog.
+*
+*/
+public class RuleEngineChangeLogTest {
+
+	@Test
+	public void returnsChangesAfterToken() {
+		RuleEngineChangeLog log=new RuleEngineChangeLog();
+		log.record(RuleEngineChangeLog.RESULT,"1.1","1.1","Pass");
+		String token=log.getToken();
+		log.record(RuleEngineChangeLog.RESULT,"1.2","1.2","Fail");
+		log.record(RuleEngineChangeLog.ENTITY,"wall1","1.2","Fail");
+		RuleEngineChangeLog.Changes changes=log.since(token);
+		assertEquals(log.getToken(),changes.getToken());
+		assertEquals(1,changes.getResults().size());
+		assertEquals("1.2",changes.getResults().get(0).getId());
+		assertEquals("Fail",changes.getResults().get(0).getValue());
+		assertEquals(1,changes.getEntities().size());
+		assertEquals("wall1",changes.getEntities().get(0).getId());
+		assertEquals(0,log.since(changes.getToken()).getResults().size());
+	}
+
+	@Test
+	public void keepsChangesInOrder() {
+		RuleEngineChangeLog log=new RuleEngineChangeLog();
+		String token=log.getToken();
+		for (int i=0; i < 10; i++) log.record(RuleEngineChangeLog.RESULT,"clause"+i,"clause"+i,"Pass");
+		List<RuleEngineChangeLog.Change> results=log.since(token).getResults();
+		assertEquals(10,results.size());
+		for (int i=1; i < results.size(); i++) assertEquals(results.get(i-1).getSequence()+1,results.get(i).getSequence());
+	}
+
+	@Test
+	public void resetsTokensFromAnotherLog() {
+		RuleEngineChangeLog before=new RuleEngineChangeLog();
+		before.record(RuleEngineChangeLog.RESULT,"1.1","1.1","Pass");
+		RuleEngineChangeLog after=new RuleEngineChangeLog();
+		after.record(RuleEngineChangeLog.RESULT,"1.1","1.1","Pass");
+		after.record(RuleEngineChangeLog.RESULT,"1.2","1.2","Pass");
+		RuleEngineChangeLog.Changes changes=after.since(before.getToken());
+		assertNull(changes.getResults());
+		assertNull(changes.getEntities());
+		assertEquals(after.getToken(),changes.getToken());
+	}
+
+	@Test
+	public void resetsMalformedTokens() {
+		RuleEngineChangeLog log=new RuleEngineChangeLog();
+		log.record(RuleEngineChangeLog.RESULT,"1.1","1.1","Pass");
+		assertNull(log.since("0").getResults());
+		assertNull(log.since(null).getResults());
+		assertNull(log.since(log.getToken()+"x").getResults());
+	}
+
+	@Test
+	public void keepsResultsWhenEntityChangesOverflow() {
+		RuleEngineChangeLog log=new RuleEngineChangeLog();
+		String token=log.getToken();
+		log.record(RuleEngineChangeLog.RESULT,"1.1","1.1","Pass");
+		// more entity changes than either ring holds, as when a large check is reset
+		for (int i=0; i <= 10000; i++) log.record(RuleEngineChangeLog.ENTITY,"entity"+i,null,null);
+		RuleEngineChangeLog.Changes changes=log.since(token);
+		assertNotNull(changes.getResults());
+		assertEquals(1,changes.getResults().size());
+		assertNull(changes.getEntities());
+	}
+}
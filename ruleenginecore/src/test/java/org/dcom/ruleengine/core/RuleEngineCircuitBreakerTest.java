@@ -0,0 +1,70 @@
+/*
+Copyright (C) 2022 Cardiff University
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+*/
+package org.dcom.ruleengine.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+* This class tests when RuleEngineCircuitBreaker opens and closes, with the default threshold of 5 consecutive failures.
+*
+*/
+public class RuleEngineCircuitBreakerTest {
+
+	@Test
+	public void startsClosed() {
+		RuleEngineCircuitBreaker breaker=new RuleEngineCircuitBreaker("test");
+		assertEquals("closed",breaker.getState());
+		assertTrue(breaker.allowRequest());
+	}
+
+	@Test
+	public void opensAfterConsecutiveFailures() {
+		RuleEngineCircuitBreaker breaker=new RuleEngineCircuitBreaker("test");
+		for (int i=0; i < 4; i++) breaker.recordFailure();
+		assertEquals("closed",breaker.getState());
+		breaker.recordFailure();
+		assertEquals("open",breaker.getState());
+		assertFalse(breaker.allowRequest());
+		assertTrue(breaker.toJSON().contains("\"rejected\":1"));
+		assertTrue(breaker.toJSON().contains("\"opened\":1"));
+	}
+
+	@Test
+	public void successResetsFailureCount() {
+		RuleEngineCircuitBreaker breaker=new RuleEngineCircuitBreaker("test");
+		for (int i=0; i < 4; i++) breaker.recordFailure();
+		breaker.recordSuccess();
+		for (int i=0; i < 4; i++) breaker.recordFailure();
+		assertEquals("closed",breaker.getState());
+		assertTrue(breaker.allowRequest());
+	}
+
+	@Test
+	public void successClosesOpenCircuit() {
+		RuleEngineCircuitBreaker breaker=new RuleEngineCircuitBreaker("test");
+		for (int i=0; i < 5; i++) breaker.recordFailure();
+		assertEquals("open",breaker.getState());
+		breaker.recordSuccess();
+		assertEquals("closed",breaker.getState());
+		assertTrue(breaker.allowRequest());
+	}
+}
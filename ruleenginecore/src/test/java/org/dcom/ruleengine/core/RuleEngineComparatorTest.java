@@ -0,0 +1,84 @@
+/*
+Copyright (C) 2022 Cardiff University
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+*/
+package org.dcom.ruleengine.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Test;
+
+/**
+* This class tests the local evaluation of RASE comparisons by RuleEngineComparator.
+*
+*/
+public class RuleEngineComparatorTest {
+
+	@Test
+	public void normalisesDataTypes() {
+		assertEquals("number",RuleEngineComparator.normaliseDataType("number"));
+		assertEquals("number",RuleEngineComparator.normaliseDataType("Integer"));
+		assertEquals("number",RuleEngineComparator.normaliseDataType(" DOUBLE "));
+		assertEquals("number",RuleEngineComparator.normaliseDataType("real"));
+		assertEquals("number",RuleEngineComparator.normaliseDataType("Decimal"));
+		assertEquals("boolean",RuleEngineComparator.normaliseDataType("Boolean"));
+		assertEquals("boolean",RuleEngineComparator.normaliseDataType("bool"));
+		assertEquals("string",RuleEngineComparator.normaliseDataType("Text"));
+		assertNull(RuleEngineComparator.normaliseDataType("geometry"));
+		assertNull(RuleEngineComparator.normaliseDataType(null));
+	}
+
+	@Test
+	public void comparesNumbers() {
+		assertTrue(RuleEngineComparator.compare(Arrays.asList("2.5"),">=","2.5",null,null));
+		assertFalse(RuleEngineComparator.compare(Arrays.asList("2.5"),">","2.5",null,null));
+		assertTrue(RuleEngineComparator.compare(Arrays.asList("10"),"<","12",null,null));
+		assertTrue(RuleEngineComparator.compare(Arrays.asList("3"),"==","3.0",null,null));
+		assertTrue(RuleEngineComparator.compare(Arrays.asList("3"),"!=","4",null,null));
+	}
+
+	@Test
+	public void treatsRoundingErrorAsEqual() {
+		assertTrue(RuleEngineComparator.compare(Arrays.asList("0.3"),"==",String.valueOf(0.1+0.2),null,null));
+		assertTrue(RuleEngineComparator.compare(Arrays.asList("0.3"),"<=",String.valueOf(0.1+0.2),null,null));
+	}
+
+	@Test
+	public void comparesStringsIgnoringCase() {
+		assertTrue(RuleEngineComparator.compare(Arrays.asList("Concrete "),"==","concrete",null,null));
+		assertFalse(RuleEngineComparator.compare(Arrays.asList("Timber"),"==","concrete",null,null));
+	}
+
+	@Test
+	public void checksListsForIncludes() {
+		assertTrue(RuleEngineComparator.compare(Arrays.asList("fire door; escape door"),"includes","escape door",null,null));
+		assertTrue(RuleEngineComparator.compare(Arrays.asList("a,b","c"),"excludes","d",null,null));
+		assertFalse(RuleEngineComparator.compare(Arrays.asList("a,b","c"),"excludes","c",null,null));
+	}
+
+	@Test
+	public void leavesUnsupportedComparisonsToTheDataSource() {
+		assertNull(RuleEngineComparator.compare(Arrays.asList("abc"),">","abd",null,null));
+		assertNull(RuleEngineComparator.compare(Arrays.asList("1"),"~","1",null,null));
+		assertNull(RuleEngineComparator.compare(Collections.<String>emptyList(),"==","1",null,null));
+		assertNull(RuleEngineComparator.compare(null,"==","1",null,null));
+	}
+}
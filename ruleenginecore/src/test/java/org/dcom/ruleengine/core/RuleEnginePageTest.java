@@ -0,0 +1,84 @@
+/*
+Copyright (C) 2022 Cardiff University
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+*/
+package org.dcom.ruleengine.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.TreeSet;
+import org.junit.Test;
+
+/**
+* This class tests the cursor paging of RuleEnginePage.
+*
+*/
+public class RuleEnginePageTest {
+
+	private static final TreeSet<String> KEYS=new TreeSet<String>(Arrays.asList("a","b","c","d","e"));
+
+	@Test
+	public void pagesThroughKeysWithCursor() {
+		RuleEnginePage<String> first=RuleEnginePage.of(KEYS,null,2,key -> key.toUpperCase());
+		assertEquals(Arrays.asList("A","B"),first.getItems());
+		RuleEnginePage<String> second=RuleEnginePage.of(KEYS,first.getNextCursor(),2,key -> key.toUpperCase());
+		assertEquals(Arrays.asList("C","D"),second.getItems());
+		RuleEnginePage<String> last=RuleEnginePage.of(KEYS,second.getNextCursor(),2,key -> key.toUpperCase());
+		assertEquals(Arrays.asList("E"),last.getItems());
+		assertNull(last.getNextCursor());
+	}
+
+	@Test
+	public void returnsEverythingWithoutLimit() {
+		RuleEnginePage<String> page=RuleEnginePage.of(KEYS,null,0,key -> key);
+		assertEquals(5,page.getItems().size());
+		assertNull(page.getNextCursor());
+	}
+
+	@Test
+	public void hasNoNextCursorWhenLastPageIsFull() {
+		RuleEnginePage<String> page=RuleEnginePage.of(KEYS,RuleEnginePage.encodeCursor("c"),2,key -> key);
+		assertEquals(Arrays.asList("d","e"),page.getItems());
+		assertNull(page.getNextCursor());
+	}
+
+	@Test
+	public void skipsFilteredKeys() {
+		RuleEnginePage<String> page=RuleEnginePage.of(KEYS,null,2,key -> key.equals("b")?null:key);
+		assertEquals(Arrays.asList("a","c"),page.getItems());
+		assertEquals(RuleEnginePage.encodeCursor("c"),page.getNextCursor());
+	}
+
+	@Test
+	public void continuesAfterKeysAddedOrRemoved() {
+		TreeSet<String> keys=new TreeSet<String>(KEYS);
+		RuleEnginePage<String> first=RuleEnginePage.of(keys,null,2,key -> key);
+		keys.remove("b");
+		keys.add("aa");
+		RuleEnginePage<String> second=RuleEnginePage.of(keys,first.getNextCursor(),2,key -> key);
+		assertEquals(Arrays.asList("c","d"),second.getItems());
+	}
+
+	@Test
+	public void decodesCursors() {
+		assertEquals("1.2.3",RuleEnginePage.decodeCursor(RuleEnginePage.encodeCursor("1.2.3")));
+		assertNull(RuleEnginePage.decodeCursor(""));
+		assertNull(RuleEnginePage.decodeCursor(null));
+		assertNull(RuleEnginePage.decodeCursor("not base64!"));
+	}
+}
@@ -0,0 +1,102 @@
+/*
+Copyright (C) 2022 Cardiff University
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+*/
+package org.dcom.ruleengine.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+/**
+* This class tests that RuleEngineScheduler keeps running other work while a run is parked waiting for an answer, within its limit on extra workers.
+*
+*/
+public class RuleEngineSchedulerTest {
+
+	@Test(timeout=10000)
+	public void parkedRunDoesNotHoldTheOnlyWorker() throws Exception {
+		RuleEngineScheduler scheduler=new RuleEngineScheduler(1,10);
+		CompletableFuture<Boolean> answer=new CompletableFuture<Boolean>();
+		CompletableFuture<Boolean> waited=new CompletableFuture<Boolean>();
+		scheduler.submit("waiting",RuleEngineScheduler.PRIORITY_NORMAL,() -> {
+			try {
+				waited.complete(RuleEngineScheduler.await(answer));
+			} catch (Exception e) {
+				waited.completeExceptionally(e);
+			}
+		});
+		// the answer is given by a second run, which needs a worker while the first is still waiting
+		scheduler.submit("answering",RuleEngineScheduler.PRIORITY_NORMAL,() -> answer.complete(true));
+		assertTrue(waited.get(5,TimeUnit.SECONDS));
+	}
+
+	@Test(timeout=10000)
+	public void surplusWorkersRetireAfterUnpark() throws Exception {
+		RuleEngineScheduler scheduler=new RuleEngineScheduler(1,10);
+		CompletableFuture<Boolean> answer=new CompletableFuture<Boolean>();
+		CompletableFuture<Boolean> waited=new CompletableFuture<Boolean>();
+		scheduler.submit("waiting",RuleEngineScheduler.PRIORITY_NORMAL,() -> {
+			try {
+				waited.complete(RuleEngineScheduler.await(answer));
+			} catch (Exception e) {
+				waited.completeExceptionally(e);
+			}
+		});
+		while (scheduler.getParkedRuns()!=1) Thread.sleep(10);
+		assertEquals(2,scheduler.getThreads());
+		answer.complete(true);
+		assertTrue(waited.get(5,TimeUnit.SECONDS));
+		// the test times out if the extra worker never retires
+		while (scheduler.getThreads()!=1 || scheduler.getActiveRuns()!=0) Thread.sleep(10);
+		assertEquals(0,scheduler.getParkedRuns());
+		assertEquals(0,scheduler.getQueueDepth());
+	}
+
+	@Test(timeout=10000)
+	public void parkedRunsStartNoWorkersPastTheLimit() throws Exception {
+		RuleEngineScheduler scheduler=new RuleEngineScheduler(1,10,1);
+		CompletableFuture<Boolean> answer=new CompletableFuture<Boolean>();
+		for (String check: new String[] {"first","second"}) {
+			scheduler.submit(check,RuleEngineScheduler.PRIORITY_NORMAL,() -> {
+				try {
+					RuleEngineScheduler.await(answer);
+				} catch (Exception e) {
+					throw new IllegalStateException(e);
+				}
+			});
+		}
+		while (scheduler.getParkedRuns()!=2) Thread.sleep(10);
+		assertEquals(2,scheduler.getThreads());
+		answer.complete(true);
+		while (scheduler.getThreads()!=1 || scheduler.getActiveRuns()!=0) Thread.sleep(10);
+	}
+
+	@Test(timeout=10000)
+	public void failingRunKeepsItsWorker() throws Exception {
+		RuleEngineScheduler scheduler=new RuleEngineScheduler(1,10);
+		CompletableFuture<Boolean> next=new CompletableFuture<Boolean>();
+		scheduler.submit("failing",RuleEngineScheduler.PRIORITY_NORMAL,() -> {
+			throw new AssertionError("run failed");
+		});
+		scheduler.submit("next",RuleEngineScheduler.PRIORITY_NORMAL,() -> next.complete(true));
+		assertTrue(next.get(5,TimeUnit.SECONDS));
+		assertEquals(1,scheduler.getThreads());
+	}
+}
@@ -35,6 +35,8 @@ import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.UriInfo;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.DocumentBuilder;
 import org.w3c.dom.Element;
@@ -46,6 +48,7 @@ import java.util.HashMap;
 import java.util.ArrayList;
 import java.util.Map;
 import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
 import org.dcom.core.security.ServiceCertificate;
 import org.dcom.core.security.DCOMBearerToken;
 import org.dcom.core.DCOM;
@@ -53,6 +56,17 @@ import javax.ws.rs.core.MultivaluedMap;
 import java.util.List;
 import org.dcom.ruleengine.core.RuleEngine;
 import org.dcom.ruleengine.core.RuleEngineComplianceCheck;
+import org.dcom.ruleengine.core.RuleEngineProfiler;
+import org.dcom.ruleengine.core.RuleEngineScheduler;
+import org.dcom.ruleengine.core.RuleEngineKieRegistry;
+import org.dcom.ruleengine.core.RuleEngineRequestBatcher;
+import org.dcom.ruleengine.core.RuleEngineJobTracker;
+import org.dcom.ruleengine.core.RuleEngineModelCache;
+import org.dcom.ruleengine.core.RuleEngineConcurrencyLimiter;
+import org.dcom.ruleengine.core.RuleEngineComplianceObject;
+import org.dcom.ruleengine.core.RuleEnginePage;
+import org.dcom.ruleengine.core.RuleEngineChangeLog;
+import org.dcom.ruleengine.core.RuleEngineConfiguration;
 import org.dcom.core.services.ComplianceCheckSettings;
 import org.dcom.core.services.ResultService;
 import org.dcom.core.services.ComplianceCheckResultItem;
@@ -62,6 +76,8 @@ import org.dcom.core.services.ComplianceCheckAnswer;
 import org.dcom.core.services.DataSourceService;
 import com.owlike.genson.Genson;
 import java.util.Set;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import uk.gov.service.notify.NotificationClient;
 import uk.gov.service.notify.SendEmailResponse;
 
@@ -88,6 +104,8 @@ public class RuleEngineAPI {
 	
 	private String successMessageJSON="{\"success\":true}";
 	private String successMessageXML="<success>true</success>";
+	
+	private static final long CREATE_TIMEOUT=RuleEngineConfiguration.getInt(RuleEngineConfiguration.CREATE_TIMEOUT,300000);
 
 	private UserAuthorisationValidator constructValidator(String securityType, String securityURI) {
 		UserAuthorisationValidator authenticator=null;
@@ -104,6 +122,12 @@ public class RuleEngineAPI {
 		if (token==null) return false;
 		UserAuthorisationValidator teamValidator = constructValidator(check.getCheckSettings().getSecurityType(), check.getCheckSettings().getSecurityURI());
 		if (teamValidator.validatePermission(token,"projectteam")) return true;
+		return authorizeService(token);
+	}
+	
+	// service wide endpoints are not part of any check, so only building control and DCOM services are allowed
+	private boolean authorizeService(String token) {
+		if (token==null) return false;
 		Set<ResultService> resultServices=DCOM.getServiceLookup().getResultServices();
 		for (ResultService result: resultServices) 	{
 			UserAuthorisationValidator authenticator = constructValidator(result.getSecurityServiceType(), result.getSecurityServiceURI());
@@ -140,10 +164,45 @@ public class RuleEngineAPI {
 	}
 	
 	
+	@GET
+	@Path("/statistics")
+	@Produces(MediaType.APPLICATION_JSON)
+	public Response statisticsJSON(@HeaderParam("Authorization") String token) {
+		if (!authorizeService(token)) return Response.status(403).type("text/plain").entity("Not Authorised").build();
+		StringBuffer str=new StringBuffer();
+		str.append("{\"scheduler\":").append(RuleEngineScheduler.getInstance().toJSON());
+		str.append(",\"ruleBases\":").append(RuleEngineKieRegistry.toJSON());
+		str.append(",\"dataRequests\":").append(RuleEngineRequestBatcher.toJSON());
+		str.append(",\"jobs\":").append(RuleEngineJobTracker.toJSON());
+		str.append(",\"modelCache\":").append(RuleEngineModelCache.toJSON());
+		str.append(",\"dataSources\":").append(RuleEngineConcurrencyLimiter.toJSONAll());
+		str.append("}");
+		return Response.ok(str.toString()).build();
+	}
+	
+	@GET
+	@Path("/profile")
+	@Produces(MediaType.APPLICATION_JSON)
+	public Response profileJSON(@HeaderParam("Authorization") String token) {
+		if (!authorizeService(token)) return Response.status(403).type("text/plain").entity("Not Authorised").build();
+		return Response.ok(RuleEngineProfiler.toJSON()).build();
+	}
+	
+	// the request thread is released straight away, the id is sent once the first run of the check has finished or after DCOM_RULEENGINE_CREATE_TIMEOUT, whichever comes first
+	private void respondOnCompletion(String guid,AsyncResponse response,String message) {
+		RuleEngineComplianceCheck check = ruleEngine.getComplianceCheck(guid,"");
+		response.setTimeoutHandler(timedOut -> timedOut.resume(Response.ok(message).build()));
+		response.setTimeout(CREATE_TIMEOUT,TimeUnit.MILLISECONDS);
+		check.onCompletion(() -> {
+			ruleEngine.serialiseComplianceCheck(guid,serviceInfo.getProperty("DCOM_SERVICE_DATA_PATH"));
+			response.resume(Response.ok(message).build());
+		});
+	}
+	
 	@PUT
 	@Path("/")
 	@Consumes(MediaType.APPLICATION_JSON)
-	public Response initCheckJSON(String body,@HeaderParam("Authorization") String token,@Context UriInfo info) {
+	public void initCheckJSON(String body,@HeaderParam("Authorization") String token,@Context UriInfo info,@Suspended AsyncResponse response) {
 		MultivaluedMap<String,String> queryParams=info.getQueryParameters();
 		String guid=queryParams.getFirst("id");
 		ComplianceCheckSettings settings=ComplianceCheckSettings.fromJSON(body);
@@ -159,23 +218,14 @@ public class RuleEngineAPI {
 				e.printStackTrace();
 			}
 		}
-		RuleEngineComplianceCheck check = ruleEngine.getComplianceCheck(guid,"");
-		while (check.isInProgress()) {
-			try {
-				Thread.sleep(1000);
-			} catch (Exception e) {
-				e.printStackTrace();
-			}
-		}
-		ruleEngine.serialiseComplianceCheck(guid,serviceInfo.getProperty("DCOM_SERVICE_DATA_PATH"));
-		return  Response.ok("{ \"complianceId\":\""+guid+"\"}").build();
+		respondOnCompletion(guid,response,"{ \"complianceId\":\""+guid+"\"}");
 	}
 	
 	
 	@PUT
 	@Path("/")
 	@Consumes(MediaType.APPLICATION_XML)
-	public Response initCheckXML(String body,@HeaderParam("Authorization") String token,@Context UriInfo info) {
+	public void initCheckXML(String body,@HeaderParam("Authorization") String token,@Context UriInfo info,@Suspended AsyncResponse response) {
 		MultivaluedMap<String,String> queryParams=info.getQueryParameters();
 		String guid=queryParams.getFirst("id");
 		ComplianceCheckSettings settings=ComplianceCheckSettings.fromJSON(body);
@@ -191,22 +241,13 @@ public class RuleEngineAPI {
 				e.printStackTrace();
 			}
 		}
-		RuleEngineComplianceCheck check = ruleEngine.getComplianceCheck(guid,"");
-		while (check.isInProgress()) {
-			try {
-				Thread.sleep(1000);
-			} catch (Exception e) {
-				e.printStackTrace();
-			}
-		}
-		ruleEngine.serialiseComplianceCheck(guid,serviceInfo.getProperty("DCOM_SERVICE_DATA_PATH"));
-		return  Response.ok("<ComplianceId>"+guid+"</ComplianceId>").build();
+		respondOnCompletion(guid,response,"<ComplianceId>"+guid+"</ComplianceId>");
 	}
 	
 	@GET
 	@Path("/{complianceCheckUID}")
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response buildingJSON(@PathParam("complianceCheckUID") String checkId,@HeaderParam("Authorization") String token) {
+	public Response buildingJSON(@PathParam("complianceCheckUID") String checkId,@HeaderParam("Authorization") String token,@Context UriInfo info) {
 		RuleEngineComplianceCheck check=ruleEngine.getComplianceCheck(checkId,serviceInfo.getProperty("DCOM_SERVICE_DATA_PATH"));
 		if (check==null) return Response.status(404).type("text/plain").build();
 		StringBuffer str=new StringBuffer();
@@ -216,39 +257,53 @@ public class RuleEngineAPI {
 		str.append(",\"securityServiceURI\":\"").append(settings.getSecurityURI()).append("\"");
 		
 		if (authorize(check,token)) {
-			str.append(",\"idSet\":[");
-			boolean first=true;
-			for (String entityId: check.getEntityList()) {
-				if (first) first=false; else str.append(",");
-				str.append(check.getEntity(entityId).toJSON());
+			MultivaluedMap<String,String> queryParams=info.getQueryParameters();
+			Set<String> fields=getFields(queryParams);
+			boolean first;
+			if (fields==null || fields.contains("idSet") || fields.contains("ids")) {
+				RuleEnginePage<RuleEngineComplianceObject> page=check.getEntities(queryParams.getFirst("cursor"),getLimit(queryParams));
+				// ids lists just the entity ids, without their properties
+				boolean full=fields==null || fields.contains("idSet");
+				str.append(full?",\"idSet\":[":",\"ids\":[");
+				first=true;
+				for (RuleEngineComplianceObject entity: page.getItems()) {
+					if (first) first=false; else str.append(",");
+					if (full) str.append(entity.toJSON());
+					else str.append("\"").append(entity.getId()).append("\"");
+				}
+				str.append("]");
+				if (page.getNextCursor()!=null) str.append(",\"nextCursor\":\"").append(page.getNextCursor()).append("\"");
 			}
-			str.append("],");
-			
-			str.append("\"conditions\":[");
-			first=true;
-			for (String cond: check.getConditions()) {
-				if (first) first=false; else str.append(",");
-				str.append("\""+cond+"\"");
+			if (fields==null || fields.contains("conditions")) {
+				str.append(",\"conditions\":[");
+				first=true;
+				for (String cond: check.getConditions()) {
+					if (first) first=false; else str.append(",");
+					str.append("\""+cond+"\"");
+				}
+				str.append("]");
 			}
-			str.append("],");
-			str.append("\"approval\":\"").append(check.getApproval()).append("\"");
-			str.append(",\"log\":[");
-			List<String> logs=check.getLogEntries();
-			first=true;
-			for (String log: logs) {
-				if (first) first=false; else str.append(",");
-				str.append("\"").append(log).append("\"");
+			if (fields==null || fields.contains("approval")) str.append(",\"approval\":\"").append(check.getApproval()).append("\"");
+			if (fields==null || fields.contains("log")) {
+				str.append(",\"log\":[");
+				List<String> logs=check.getLogEntries();
+				first=true;
+				for (String log: logs) {
+					if (first) first=false; else str.append(",");
+					str.append("\"").append(log).append("\"");
+				}
+				str.append("]");
 			}
-			str.append("],");
-			str.append("\"messages\":[");
-			List<String> messages=check.getMessages();
-			first=true;
-			for (String message: messages) {
-				if (first) first=false; else str.append(",");
-				str.append("\"").append(message.replace("\n","<br/>")).append("\"");
+			if (fields==null || fields.contains("messages")) {
+				str.append(",\"messages\":[");
+				List<String> messages=check.getMessages();
+				first=true;
+				for (String message: messages) {
+					if (first) first=false; else str.append(",");
+					str.append("\"").append(message.replace("\n","<br/>")).append("\"");
+				}
+				str.append("]");
 			}
-			str.append("]");
-			
 		}
 		str.append("}");
 		return Response.ok(str.toString()).build();		
@@ -486,7 +541,32 @@ public class RuleEngineAPI {
 		return  Response.ok(successMessageXML.toString()).build();
 	}
 	
-	private List<ComplianceCheckResultItem> getResults(RuleEngineComplianceCheck check,UriInfo info) {
+	// the comma separated fields query parameter, null when everything is wanted
+	private Set<String> getFields(MultivaluedMap<String,String> queryParams) {
+		return getValues(queryParams,"fields");
+	}
+	
+	// a comma separated query parameter, null when it is not given
+	private Set<String> getValues(MultivaluedMap<String,String> queryParams,String name) {
+		String values=queryParams.getFirst(name);
+		if (values==null || values.trim().equals("")) return null;
+		Set<String> valueSet=new HashSet<String>();
+		for (String value: values.split(",")) valueSet.add(value.trim());
+		return valueSet;
+	}
+	
+	// the page size given by the limit query parameter, 0 for no paging
+	private int getLimit(MultivaluedMap<String,String> queryParams) {
+		String limit=queryParams.getFirst("limit");
+		if (limit==null) return 0;
+		try {
+			return Math.max(0,Integer.parseInt(limit));
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+	
+	private RuleEnginePage<ComplianceCheckResultItem> getResults(RuleEngineComplianceCheck check,UriInfo info) {
 		MultivaluedMap<String,String> queryParams=info.getQueryParameters();
 		String sVal=queryParams.getFirst("start");
 		LocalDateTime start=null;
@@ -495,8 +575,33 @@ public class RuleEngineAPI {
 		LocalDateTime end=null;
 		if (eVal!=null) end=LocalDateTime.parse(eVal);
 		String freeText=queryParams.getFirst("search");
-		List<ComplianceCheckResultItem> results = check.getResults(start,end,freeText);
-		return results;
+		Set<String> statuses=getValues(queryParams,"status");
+		String prefix=queryParams.getFirst("prefix");
+		Set<String> types=getValues(queryParams,"type");
+		return check.getResults(start,end,freeText,statuses,prefix,types,queryParams.getFirst("cursor"),getLimit(queryParams),getFields(queryParams));
+	}
+	
+	// the results changed after the sequence token given by the since query parameter, all results (reset) when those changes are no longer held
+	private ResultChanges getResultChanges(RuleEngineComplianceCheck check,UriInfo info) {
+		MultivaluedMap<String,String> queryParams=info.getQueryParameters();
+		Set<String> fields=getFields(queryParams);
+		ResultChanges resultChanges=new ResultChanges();
+		RuleEngineChangeLog.Changes changes=check.getChanges(queryParams.getFirst("since"));
+		resultChanges.sequence=changes.getToken();
+		if (changes.getResults()==null) {
+			resultChanges.reset=true;
+			resultChanges.results=check.getResults(null,null,null,null,null,null,null,0,fields).getItems();
+		} else {
+			LinkedHashSet<String> changedClauses=new LinkedHashSet<String>();
+			for (RuleEngineChangeLog.Change change: changes.getResults()) changedClauses.add(change.getId());
+			for (String clauseId: changedClauses) {
+				ComplianceCheckResultItem item=check.getResult(clauseId,fields);
+				if (item!=null) resultChanges.results.add(item);
+			}
+		}
+		if (changes.getEntities()==null) resultChanges.entitiesReset=true;
+		else resultChanges.entityChanges.addAll(changes.getEntities());
+		return resultChanges;
 	}
 	
 	@GET
@@ -506,16 +611,42 @@ public class RuleEngineAPI {
 		RuleEngineComplianceCheck check=ruleEngine.getComplianceCheck(checkId,serviceInfo.getProperty("DCOM_SERVICE_DATA_PATH"));
 		if (check==null) return Response.status(404).type("text/plain").build();
 		if (!authorize(check,token)) return Response.status(403).type("text/plain").entity("Not Authorised").build();
-		List<ComplianceCheckResultItem> results=getResults(check,info);
+		if (info.getQueryParameters().getFirst("since")!=null) {
+			ResultChanges changes=getResultChanges(check,info);
+			StringBuffer str=new StringBuffer();
+			str.append("{\"sequence\":\"").append(changes.sequence).append("\"");
+			str.append(",\"reset\":").append(changes.reset);
+			str.append(",\"entitiesReset\":").append(changes.entitiesReset);
+			str.append(",\"results\":[");
+			boolean first=true;
+			for (ComplianceCheckResultItem item: changes.results) {
+				if (first) first=false; else str.append(",");
+				str.append(item.toJSON());
+			}
+			str.append("],\"entities\":[");
+			first=true;
+			for (RuleEngineChangeLog.Change change: changes.entityChanges) {
+				if (first) first=false; else str.append(",");
+				str.append("{\"sequence\":").append(change.getSequence());
+				str.append(",\"id\":\"").append(change.getId()).append("\"");
+				str.append(",\"clause\":").append(change.getClause()==null?"null":"\""+change.getClause()+"\"");
+				str.append(",\"status\":").append(change.getValue()==null?"null":"\""+change.getValue()+"\"").append("}");
+			}
+			str.append("]}");
+			return Response.ok(str.toString()).build();
+		}
+		RuleEnginePage<ComplianceCheckResultItem> results=getResults(check,info);
 		StringBuffer str=new StringBuffer();
 		str.append("{ \"results\":[");
 		boolean first=true;
-		for (ComplianceCheckResultItem item: results) {
+		for (ComplianceCheckResultItem item: results.getItems()) {
 			if (first) first=false;
 			else str.append(",");
 			str.append(item.toJSON());
 		}
-		str.append("]}");
+		str.append("]");
+		if (results.getNextCursor()!=null) str.append(",\"nextCursor\":\"").append(results.getNextCursor()).append("\"");
+		str.append("}");
 		return  Response.ok(str.toString()).build();
 	}
 	
@@ -528,10 +659,32 @@ public class RuleEngineAPI {
 		RuleEngineComplianceCheck check=ruleEngine.getComplianceCheck(checkId,serviceInfo.getProperty("DCOM_SERVICE_DATA_PATH"));
 		if (check==null) return Response.status(404).type("text/plain").build();
 		if (!authorize(check,token)) return Response.status(403).type("text/plain").entity("Not Authorised").build();
-		List<ComplianceCheckResultItem> results=getResults(check,info);
+		if (info.getQueryParameters().getFirst("since")!=null) {
+			ResultChanges changes=getResultChanges(check,info);
+			StringBuffer str=new StringBuffer();
+			str.append("<Results>");
+			str.append("<Sequence>").append(changes.sequence).append("</Sequence>");
+			str.append("<Reset>").append(changes.reset).append("</Reset>");
+			str.append("<EntitiesReset>").append(changes.entitiesReset).append("</EntitiesReset>");
+			for (ComplianceCheckResultItem item: changes.results) str.append(item.toXML());
+			str.append("<EntityChanges>");
+			for (RuleEngineChangeLog.Change change: changes.entityChanges) {
+				str.append("<EntityChange>");
+				str.append("<Sequence>").append(change.getSequence()).append("</Sequence>");
+				str.append("<Id>").append(change.getId()).append("</Id>");
+				if (change.getClause()!=null) str.append("<Clause>").append(change.getClause()).append("</Clause>");
+				if (change.getValue()!=null) str.append("<Status>").append(change.getValue()).append("</Status>");
+				str.append("</EntityChange>");
+			}
+			str.append("</EntityChanges>");
+			str.append("</Results>");
+			return Response.ok(str.toString()).build();
+		}
+		RuleEnginePage<ComplianceCheckResultItem> results=getResults(check,info);
 		StringBuffer str=new StringBuffer();
 		str.append("<Results>");
-		for (ComplianceCheckResultItem item: results) str.append(item.toXML());
+		for (ComplianceCheckResultItem item: results.getItems()) str.append(item.toXML());
+		if (results.getNextCursor()!=null) str.append("<NextCursor>").append(results.getNextCursor()).append("</NextCursor>");
 		str.append("</Results>");
 		return  Response.ok(str.toString()).build();
 	}
@@ -633,4 +786,11 @@ public class RuleEngineAPI {
 		return  Response.ok(str.toString()).build();
 	}
 	
-}
\ No newline at end of file
+	private static class ResultChanges {
+		private String sequence;
+		private boolean reset;
+		private boolean entitiesReset;
+		private List<ComplianceCheckResultItem> results=new ArrayList<ComplianceCheckResultItem>();
+		private List<RuleEngineChangeLog.Change> entityChanges=new ArrayList<RuleEngineChangeLog.Change>();
+	}
+}
@@ -0,0 +1,37 @@
+#! /bin/bash
+
+# compiles every available compliance document into an executable model kjar
+# and stores it in the rule artifact directory, from where the rule engine
+# service loads it directly without any maven build at runtime
+ARTIFACT_DIR=${1:-${DCOM_RULEENGINE_ARTIFACT_PATH:-/opt/rules}}
+mkdir -p $ARTIFACT_DIR
+
+# get a list of compliance documents to build
+mkdir -p /root/documents
+cd /root/documents
+java -cp /opt/RaseCompiler.jar org.dcom.ruleengine.core.DocumentListGenerator
+
+# compile the documents
+for d in ./*/ ; do
+   echo $d
+   mkdir -p /root/rule/src/main/resources/META-INF
+   cp /opt/kmodule.xml /root/rule/src/main/resources/META-INF
+   cp /opt/pom.xml /root/rule
+   i=1
+   for f in $d/*.html ; do 
+   	echo $f
+   	java -cp /opt/RaseCompiler.jar org.dcom.ruleengine.rasecompiler.RASEDRLCompiler "$f" /opt/dictionary.json /root/rule/prefetch$i.txt > /root/rule/src/main/resources/rule$i.drl
+   	cat /root/rule/prefetch$i.txt >> /root/rule/src/main/resources/dcom-prefetch.txt
+    ((i=i+1))
+   done
+   cd /root/rule
+   d1="${d//\//}"
+   d1="${d1//./}"
+   sed -i.bak -e "s/\RULE_NAME/$d1/" pom.xml 
+   mvn -B package -DgenerateModel=YES && cp target/$d1-1.0.jar $ARTIFACT_DIR/$d1.jar
+   cd /root
+   rm -rf /root/rule
+   cd /root/documents
+done 
+
+rm -rf /root/documents
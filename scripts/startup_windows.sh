@@ -17,7 +17,8 @@ if [ "$(ls -A ./)" ]; then
      i=1
      for f in $d/*.html ; do 
      	echo $f
-     	java -cp /c/ProgramData/RaseCompiler.jar org.dcom.ruleengine.rasecompiler.RASEDRLCompiler "$f" /c/ProgramData/dictionary.json > /c/rule/src/main/resources/rule$i.drl
+     	java -cp /c/ProgramData/RaseCompiler.jar org.dcom.ruleengine.rasecompiler.RASEDRLCompiler "$f" /c/ProgramData/dictionary.json /c/rule/prefetch$i.txt > /c/rule/src/main/resources/rule$i.drl
+     	cat /c/rule/prefetch$i.txt >> /c/rule/src/main/resources/dcom-prefetch.txt
       ((i=i+1))
      done
      cd /c/rule